@@ -45,15 +45,12 @@ public class Main
      */
     private static void _parseArguments(String[] args)
     {
-        boolean nextArgIsHost = false;
+        String option = null;
 
         for(String arg : args) {
-            if(nextArgIsHost) {
-                nextArgIsHost = false;
-
-                if(!arg.startsWith("-")) {
-                    Settings.host = arg;
-                }
+            if(option != null) {
+                Main._setOption(option, arg);
+                option = null;
 
                 continue;
             }
@@ -112,7 +109,91 @@ public class Main
 
                 case "-h":
                 case "--host":
-                    nextArgIsHost = true;
+                    option = "host";
+
+                    break;
+
+                case "-w":
+                case "--workers":
+                    option = "workers";
+
+                    break;
+
+                case "-t":
+                case "--virtual-threads":
+                    Settings.virtualThreads = true;
+
+                    break;
+
+                case "--adaptive":
+                    Settings.adaptive = true;
+
+                    break;
+
+                case "--hedge":
+                    Settings.hedge = true;
+
+                    break;
+
+                case "--hedge-percentile":
+                    option = "hedge-percentile";
+
+                    break;
+
+                case "-c":
+                case "--connections":
+                    option = "connections";
+
+                    break;
+
+                case "--transport":
+                    option = "transport";
+
+                    break;
+
+                case "--pipeline-connections":
+                    option = "pipeline-connections";
+
+                    break;
+
+                case "--pipeline-depth":
+                    option = "pipeline-depth";
+
+                    break;
+
+                case "--buffer-memory":
+                    option = "buffer-memory";
+
+                    break;
+
+                case "--schedule":
+                    option = "schedule";
+
+                    break;
+
+                case "--priority":
+                    option = "priority";
+
+                    break;
+
+                case "--retries":
+                case "--retry-delay":
+                case "--breaker-threshold":
+                case "--breaker-cooldown":
+                case "--limit-rate":
+                case "--limit-requests":
+                case "--host-limit-rate":
+                case "--host-limit-requests":
+                case "--connect-timeout":
+                case "--first-byte-timeout":
+                case "--idle-timeout":
+                case "--deadline":
+                case "--proxy-connections":
+                case "--dns-ttl":
+                case "--warm-up":
+                case "--segments":
+                case "--segment-threshold":
+                    option = arg.toLowerCase().substring(2);
 
                     break;
 
@@ -122,6 +203,22 @@ public class Main
 
                     break;
 
+                case "-r":
+                case "--revalidate":
+                    Settings.revalidate = true;
+
+                    break;
+
+                case "--plan":
+                    Settings.plan = true;
+
+                    break;
+
+                case "--no-compression":
+                    Settings.compression = false;
+
+                    break;
+
                 default:
                     Main._setProxyOrPath(arg);
 
@@ -140,26 +237,240 @@ public class Main
         }
     }
 
+    /**
+     * Sets the value of an argument that expects one.
+     *
+     * @param option Option name.
+     * @param value  Command line argument following the option.
+     */
+    private static void _setOption(String option, String value)
+    {
+        if(value.startsWith("-")) {
+            return;
+        }
+
+        switch(option)
+        {
+            case "host":
+                Settings.host = value;
+
+                break;
+
+            case "workers":
+                Settings.workers = Main._parseInt(value, Settings.workers);
+
+                break;
+
+            case "connections":
+                Settings.connectionsPerHost = Main._parseInt(value, Settings.connectionsPerHost);
+
+                break;
+
+            case "transport":
+                Settings.transport = value.toLowerCase();
+
+                break;
+
+            case "schedule":
+                Settings.schedule = value.toLowerCase();
+
+                break;
+
+            case "priority":
+                Settings.priorities = value;
+
+                break;
+
+            case "pipeline-connections":
+                Settings.pipelineConnections = Main._parseInt(value, Settings.pipelineConnections);
+
+                break;
+
+            case "pipeline-depth":
+                Settings.pipelineDepth = Main._parseInt(value, Settings.pipelineDepth);
+
+                break;
+
+            case "buffer-memory":
+                Settings.bufferPoolMemory = Main._parseInt(value, Settings.bufferPoolMemory);
+
+                break;
+
+            case "hedge-percentile":
+                Settings.hedgePercentile = Math.min(99, Main._parseInt(value, Settings.hedgePercentile));
+
+                break;
+
+            case "retries":
+                Settings.retries = Main._parseInt(value, Settings.retries);
+
+                break;
+
+            case "retry-delay":
+                Settings.retryDelay = Main._parseInt(value, Settings.retryDelay);
+
+                break;
+
+            case "breaker-threshold":
+                Settings.breakerThreshold = Main._parseInt(value, Settings.breakerThreshold);
+
+                break;
+
+            case "breaker-cooldown":
+                Settings.breakerCooldown = Main._parseInt(value, Settings.breakerCooldown);
+
+                break;
+
+            case "limit-rate":
+                Settings.bytesPerSecond = Main._parseSize(value, Settings.bytesPerSecond);
+
+                break;
+
+            case "limit-requests":
+                Settings.requestsPerSecond = Main._parseInt(value, (int)Settings.requestsPerSecond);
+
+                break;
+
+            case "dns-ttl":
+                Settings.dnsTtl = Main._parseInt(value, Settings.dnsTtl, 0);
+
+                break;
+
+            case "warm-up":
+                Settings.warmUpConnections = Main._parseInt(value, Settings.warmUpConnections);
+
+                break;
+
+            case "proxy-connections":
+                Settings.proxyConnections = Main._parseInt(value, Settings.proxyConnections);
+
+                break;
+
+            case "segments":
+                Settings.segments = Main._parseInt(value, Settings.segments);
+
+                break;
+
+            case "segment-threshold":
+                Settings.segmentThreshold = Main._parseSize(value, Settings.segmentThreshold);
+
+                break;
+
+            case "host-limit-rate":
+                Settings.hostBytesPerSecond = Main._parseSize(value, Settings.hostBytesPerSecond);
+
+                break;
+
+            case "host-limit-requests":
+                Settings.hostRequestsPerSecond = Main._parseInt(value, (int)Settings.hostRequestsPerSecond);
+
+                break;
+
+            case "connect-timeout":
+                Settings.connectTimeout = Main._parseInt(value, Settings.connectTimeout, 0);
+
+                break;
+
+            case "first-byte-timeout":
+                Settings.firstByteTimeout = Main._parseInt(value, Settings.firstByteTimeout, 0);
+
+                break;
+
+            case "idle-timeout":
+                Settings.idleTimeout = Main._parseInt(value, Settings.idleTimeout, 0);
+
+                break;
+
+            case "deadline":
+                Settings.deadline = Main._parseInt(value, Settings.deadline, 0);
+
+                break;
+        }
+    }
+
+    /**
+     * Parses a positive integer argument.
+     *
+     * @param value    Command line argument.
+     * @param fallback Value to return if `value` isn't a positive integer.
+     *
+     * @return Parsed value or `fallback`.
+     */
+    private static int _parseInt(String value, int fallback)
+    {
+        return Main._parseInt(value, fallback, 1);
+    }
+
+    /**
+     * Parses an integer argument.
+     *
+     * @param value    Command line argument.
+     * @param fallback Value to return if `value` isn't a valid number.
+     * @param min      Minimum accepted value.
+     *
+     * @return Parsed value or `fallback`.
+     */
+    private static int _parseInt(String value, int fallback, int min)
+    {
+        try {
+            int i = Integer.parseUnsignedInt(value);
+            if(i >= min) {
+                return i;
+            }
+        } catch(Exception e) {
+            // Ignore
+        }
+
+        Console.println("'"+ value +"' isn't a valid number, using "+ fallback +" instead.");
+
+        return fallback;
+    }
+
+    /**
+     * Parses a size argument.
+     *
+     * Accepts an amount of bytes with an optional `k`, `m` or `g` suffix.
+     *
+     * @param value    Command line argument.
+     * @param fallback Value to return if `value` isn't a valid size.
+     *
+     * @return Parsed size in bytes or `fallback`.
+     */
+    private static long _parseSize(String value, long fallback)
+    {
+        try {
+            String number = value.toLowerCase();
+            int    exp    = "kmg".indexOf(number.charAt(number.length() - 1)) + 1;
+
+            if(exp > 0) {
+                number = number.substring(0, number.length() - 1);
+            }
+
+            long size = Long.parseUnsignedLong(number) << (10 * exp);
+            if(size > 0) {
+                return size;
+            }
+        } catch(Exception e) {
+            // Ignore
+        }
+
+        Console.println("'"+ value +"' isn't a valid size, using "+ fallback +" instead.");
+
+        return fallback;
+    }
+
     /**
      * Sets proxy or path information.
      *
+     * Proxies can be given several times, or separated by commas.
+     *
      * @param arg Command line argument.
      */
     private static void _setProxyOrPath(String arg)
     {
-        String[] proxyInfo = arg.split(":");
-        if(Main._isIP(proxyInfo[0])) {
-            try {
-                Settings.proxyPort = Integer.parseUnsignedInt(proxyInfo[1]);
-                if(Settings.proxyPort >= 65535) {
-                    Console.println(">tfw you don't know what `host:port` means.");
-
-                    return; // Let's try to be fool proof.
-                }
-
-                Settings.proxyHost = proxyInfo[0];
-            } catch(Exception e) {
-                // Ignore
+        if(Main._isIP(arg.split(":")[0])) {
+            for(String proxy : arg.split(",")) {
+                Main._addProxy(proxy.trim());
             }
 
             return;
@@ -190,6 +501,32 @@ public class Main
         Settings.path = path;
     }
 
+    /**
+     * Adds a proxy.
+     *
+     * @param proxy Proxy as `host:port`.
+     */
+    private static void _addProxy(String proxy)
+    {
+        String[] proxyInfo = proxy.split(":");
+
+        try {
+            int port = Integer.parseUnsignedInt(proxyInfo[1]);
+            if(
+                !Main._isIP(proxyInfo[0]) ||
+                port >= 65535
+            ) {
+                Console.println(">tfw you don't know what `host:port` means.");
+
+                return; // Let's try to be fool proof.
+            }
+
+            Settings.proxies += (Settings.proxies.isEmpty() ? "" : ",") + proxyInfo[0] +":"+ port;
+        } catch(Exception e) {
+            // Ignore
+        }
+    }
+
     /**
      * Checks whether a string is an IP or not.
      *
@@ -215,13 +552,60 @@ public class Main
     public static void printDebugInfo()
     {
         Console.debug("Save path: "+ Settings.path.getAbsolutePath());
+        if(Settings.plan) {
+            Console.debug("Planning only, nothing will be written.");
+        }
 
-        if(!Settings.proxyHost.isEmpty()) {
-            Console.debug("Proxy: "+ Settings.proxyHost +":"+ Settings.proxyPort);
+        if(!Settings.proxies.isEmpty()) {
+            Console.debug("Proxies: "+ Settings.proxies +" ("+ Settings.proxyConnections +" requests each)");
         } else {
             Console.debug("No proxy will be used.");
         }
 
+        if(Settings.virtualThreads) {
+            Console.debug("Workers: one virtual thread per file");
+        } else {
+            Console.debug("Workers: "+ Settings.workers);
+        }
+        Console.debug("Connections per host: "+ Settings.connectionsPerHost);
+        Console.debug("Adaptive concurrency: "+ Settings.adaptive);
+        Console.debug("Attempts per file: "+ Settings.retries);
+
+        if(Settings.hedge) {
+            Console.debug("Hedging requests slower than the p"+ Settings.hedgePercentile +" of their category");
+        }
+        Console.debug("Transport: "+ Settings.transport);
+        Console.debug("Compression: "+ Settings.compression);
+        Console.debug("DNS cache: "+ Settings.dnsTtl +"s");
+        if(Settings.warmUpConnections > 0) {
+            Console.debug("Warm-up: "+ Settings.warmUpConnections +" connections per host");
+        }
+        if(Settings.segments > 1) {
+            Console.debug("Segments: up to "+ Settings.segments +" for files of "+ Settings.segmentThreshold +" B or more");
+        }
+        Console.debug("Schedule: "+ Settings.schedule + (Settings.schedule.equals("priority") ? " ("+ Settings.priorities +")" : ""));
+        Console.debug(
+                "Timeouts: "+ Settings.connectTimeout +"s to connect, "+
+                Settings.firstByteTimeout +"s for the first byte, "+
+                Settings.idleTimeout +"s between bytes"
+        );
+
+        if(Settings.deadline > 0) {
+            Console.debug("Deadline: "+ Settings.deadline +"s");
+        }
+        if(Settings.bytesPerSecond > 0) {
+            Console.debug("Rate limit: "+ Settings.bytesPerSecond +" B/s");
+        }
+        if(Settings.requestsPerSecond > 0) {
+            Console.debug("Request limit: "+ Settings.requestsPerSecond +" requests/s");
+        }
+        if(Settings.hostBytesPerSecond > 0) {
+            Console.debug("Rate limit per host: "+ Settings.hostBytesPerSecond +" B/s");
+        }
+        if(Settings.hostRequestsPerSecond > 0) {
+            Console.debug("Request limit per host: "+ Settings.hostRequestsPerSecond +" requests/s");
+        }
+
         if(!Settings.downloadAll) {
             Console.debug("Download SWF files: "+ Settings.downloadSWF);
             Console.debug("Download XML files: "+ Settings.downloadXML);
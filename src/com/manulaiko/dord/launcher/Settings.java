@@ -57,22 +57,209 @@ public class Settings
     public static File path = new File("./");
 
     /**
-     * Proxy host.
+     * Proxies to download the files through, as `host:port` separated by commas.
+     *
+     * Empty to connect directly.
      */
-    public static String proxyHost = "";
-
-    /**
-     * Proxy port.
-     */
-    public static int proxyPort = 0;
+    public static String proxies = "";
 
     /**
      * Host to download the files from.
+     *
+     * Can be several equivalent hosts (mirrors) separated by commas, the
+     * requests are spread between the ones that answer faster and fail less.
      */
     public static String host = "test2.darkorbit.bigpoint.com";
 
     /**
      * Whether already downloaded files should be over writed or not (skipped).
+     *
+     * Files whose manifest `hash`/`version` didn't change since they were
+     * downloaded are still skipped.
      */
     public static boolean overwrite = false;
+
+    /**
+     * Amount of files downloaded at the same time.
+     *
+     * 1 means files are downloaded one after another.
+     */
+    public static int workers = 1;
+
+    /**
+     * Whether each file should be downloaded on its own virtual thread or not.
+     *
+     * Takes precedence over `workers`.
+     */
+    public static boolean virtualThreads = false;
+
+    /**
+     * Maximum amount of open connections to a single host.
+     */
+    public static int connectionsPerHost = 64;
+
+    /**
+     * Transport used to send the requests.
+     *
+     * Either `urlconnection`, `httpclient` or `pipelining`.
+     */
+    public static String transport = "urlconnection";
+
+    /**
+     * Amount of connections opened to each host by the `pipelining` transport.
+     */
+    public static int pipelineConnections = 4;
+
+    /**
+     * Maximum amount of requests sent through a connection before reading their responses
+     * by the `pipelining` transport.
+     */
+    public static int pipelineDepth = 8;
+
+    /**
+     * Whether already downloaded files should be downloaded again only if they changed on the host.
+     */
+    public static boolean revalidate = false;
+
+    /**
+     * MiB of download buffers kept around to be reused.
+     */
+    public static int bufferPoolMemory = 16;
+
+    /**
+     * Maximum downloaded bytes per second, `0` means no limit.
+     */
+    public static long bytesPerSecond = 0;
+
+    /**
+     * Maximum requests per second, `0` means no limit.
+     */
+    public static long requestsPerSecond = 0;
+
+    /**
+     * Maximum downloaded bytes per second from a single host, `0` means no limit.
+     */
+    public static long hostBytesPerSecond = 0;
+
+    /**
+     * Maximum requests per second to a single host, `0` means no limit.
+     */
+    public static long hostRequestsPerSecond = 0;
+
+    /**
+     * Whether the amount of requests in flight is adjusted at runtime or not.
+     *
+     * It's kept between 1 and `workers` (or `connectionsPerHost` with `virtualThreads`).
+     */
+    public static boolean adaptive = false;
+
+    /**
+     * Maximum attempts to download a file, including the first one.
+     */
+    public static int retries = 3;
+
+    /**
+     * Milliseconds to wait before the first retry, doubled on each following one.
+     */
+    public static int retryDelay = 500;
+
+    /**
+     * Consecutive failures from a host that stop sending requests to it.
+     */
+    public static int breakerThreshold = 5;
+
+    /**
+     * Seconds to wait before sending requests again to a failing host.
+     */
+    public static int breakerCooldown = 30;
+
+    /**
+     * Whether slow requests are sent again to race the original one or not.
+     */
+    public static boolean hedge = false;
+
+    /**
+     * Percentile of the response times of a category after which a request is hedged.
+     */
+    public static int hedgePercentile = 95;
+
+    /**
+     * Seconds to wait for a connection to be opened, `0` means forever.
+     */
+    public static int connectTimeout = 10;
+
+    /**
+     * Seconds to wait for the status and headers of a response, `0` means forever.
+     */
+    public static int firstByteTimeout = 30;
+
+    /**
+     * Seconds a response can go without sending bytes, `0` means forever.
+     *
+     * The `urlconnection` transport can't abort a blocked read, so it uses
+     * the shortest of this and `firstByteTimeout` for both.
+     */
+    public static int idleTimeout = 30;
+
+    /**
+     * Seconds the whole run can take, `0` means no limit.
+     *
+     * Downloads still running when it passes are cancelled.
+     */
+    public static int deadline = 0;
+
+    /**
+     * Policy that decides which queued file downloads next.
+     *
+     * `fifo` keeps the order of the manifests, `sjf` downloads the smallest
+     * files first, `fair` takes turns between the categories and `priority`
+     * follows the order of `priorities`.
+     */
+    public static String schedule = "fifo";
+
+    /**
+     * Categories in the order the `priority` schedule downloads them, separated by commas.
+     */
+    public static String priorities = "xml,swf,loadingScreen,2D,3D,images";
+
+    /**
+     * Whether the files are only sized, without downloading or writing anything, or not.
+     */
+    public static boolean plan = false;
+
+    /**
+     * Maximum amount of ranges a large file is downloaded in at the same time, `1` disables it.
+     *
+     * Extra ranges only use free connections to the host.
+     */
+    public static int segments = 1;
+
+    /**
+     * Minimum size in bytes of the files downloaded in segments.
+     */
+    public static long segmentThreshold = 8 * 1024 * 1024;
+
+    /**
+     * Whether text files are requested compressed (gzip or deflate) or not.
+     *
+     * They're decompressed while they're written. Resumed files are never compressed.
+     */
+    public static boolean compression = true;
+
+    /**
+     * Maximum amount of requests sent through a single proxy at the same time.
+     */
+    public static int proxyConnections = 16;
+
+    /**
+     * Seconds the addresses of the hosts are cached, `0` means they aren't.
+     *
+     * Only used by the `pipelining` transport, the other ones use the JVM's cache.
+     */
+    public static int dnsTtl = 300;
+
+    /**
+     * Connections opened to each host before the downloads start, `0` disables it.
+     */
+    public static int warmUpConnections = 0;
 }
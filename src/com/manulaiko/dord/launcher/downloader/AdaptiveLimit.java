@@ -0,0 +1,325 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Adaptive limit.
+ *
+ * Limits the amount of requests in flight and adjusts the limit at
+ * runtime with an additive-increase/multiplicative-decrease policy.
+ *
+ * Completed requests are grouped in windows of at least `limit` requests.
+ * At the end of each window the limit is halved if requests failed with
+ * congestion errors (5xx, 429, resets, timeouts), or if their average latency
+ * grew well above the lowest window average seen without any throughput gain.
+ * Otherwise it's increased by one as long as the throughput didn't drop.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class AdaptiveLimit
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int    MIN_WINDOW        = 8;
+    private static final double MAX_ERROR_RATE    = 0.05;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final long   LATENCY_SLACK     = 10_000_000;
+    private static final double THROUGHPUT_DROP   = 0.9;
+    private static final int    MAX_HISTORY       = 64;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Minimum limit.
+     */
+    private int _min;
+
+    /**
+     * Maximum limit.
+     */
+    private int _max;
+
+    /**
+     * Current limit.
+     */
+    private double _limit;
+
+    /**
+     * Requests in flight.
+     */
+    private int _inFlight = 0;
+
+    /**
+     * Lowest average latency of a window, in nanoseconds.
+     */
+    private long _minLatency = Long.MAX_VALUE;
+
+    /**
+     * Throughput of the last window, in bytes per second.
+     */
+    private double _lastThroughput = 0;
+
+    /**
+     * Start of the current window.
+     */
+    private long _windowStart = System.nanoTime();
+
+    /**
+     * Completed requests in the current window.
+     */
+    private int _windowRequests = 0;
+
+    /**
+     * Failed requests in the current window.
+     */
+    private int _windowErrors = 0;
+
+    /**
+     * Sum of the latencies of the current window.
+     */
+    private long _windowLatency = 0;
+
+    /**
+     * Downloaded bytes in the current window.
+     */
+    private long _windowBytes = 0;
+
+    /**
+     * Amount of times the limit was increased.
+     */
+    private int _increases = 0;
+
+    /**
+     * Amount of times the limit was decreased.
+     */
+    private int _decreases = 0;
+
+    /**
+     * Limit after each change.
+     */
+    private ArrayList<Integer> _history = new ArrayList<>();
+
+    /**
+     * Guards the limit and the window.
+     *
+     * A lock instead of `synchronized`, so virtual threads waiting
+     * for a slot don't pin their carrier.
+     */
+    private ReentrantLock _lock = new ReentrantLock();
+
+    /**
+     * Signalled when a request finishes.
+     */
+    private Condition _released = this._lock.newCondition();
+
+    /**
+     * Constructor.
+     *
+     * @param min Minimum limit.
+     * @param max Maximum limit.
+     */
+    public AdaptiveLimit(int min, int max)
+    {
+        this._min   = min;
+        this._max   = Math.max(min, max);
+        this._limit = Math.max(min, max / 4);
+
+        this._history.add((int)this._limit);
+    }
+
+    /**
+     * Waits until a request can be sent.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public void acquire() throws InterruptedIOException
+    {
+        this._lock.lock();
+        try {
+            while(this._inFlight >= this.getLimit()) {
+                this._released.await();
+            }
+
+            this._inFlight++;
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for the concurrency limit");
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Takes a free slot, without waiting.
+     *
+     * Must be followed by `release` if it succeeds.
+     *
+     * @return `true` if a request can be sent, `false` if the limit was reached.
+     */
+    public boolean tryAcquire()
+    {
+        this._lock.lock();
+        try {
+            if(this._inFlight >= this.getLimit()) {
+                return false;
+            }
+
+            this._inFlight++;
+
+            return true;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Reports a finished request.
+     *
+     * @param latency   Nanoseconds until the response arrived, `0` if it didn't.
+     * @param bytes     Downloaded bytes.
+     * @param congested Whether the request failed because the host is overloaded or not.
+     */
+    public void release(long latency, long bytes, boolean congested)
+    {
+        this._lock.lock();
+        try {
+            this._inFlight--;
+            this._windowRequests++;
+            this._windowBytes += bytes;
+
+            if(congested) {
+                this._windowErrors++;
+            }
+
+            if(latency > 0) {
+                this._windowLatency += latency;
+            }
+
+            if(this._windowRequests >= Math.max(AdaptiveLimit.MIN_WINDOW, this.getLimit())) {
+                this._adjust();
+            }
+
+            this._released.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Frees a slot without reporting a request.
+     *
+     * Used by requests whose latency and bytes don't belong to the
+     * windows, like hedges.
+     */
+    public void cancel()
+    {
+        this._lock.lock();
+        try {
+            this._inFlight--;
+
+            this._released.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Returns current limit.
+     *
+     * @return Current limit.
+     */
+    public int getLimit()
+    {
+        this._lock.lock();
+        try {
+            return (int)this._limit;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Returns limit stats.
+     *
+     * @return Limit stats.
+     */
+    public String getStats()
+    {
+        this._lock.lock();
+        try {
+            StringBuilder history = new StringBuilder();
+            for(int limit : this._history) {
+                if(history.length() > 0) {
+                    history.append(" -> ");
+                }
+
+                history.append(limit);
+            }
+
+            return "Concurrency limit: "+ this.getLimit() +" (between "+ this._min +" and "+ this._max +"), "+
+                   this._increases +" increases, "+ this._decreases +" decreases\n"+
+                   "Concurrency history: "+ history;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Adjusts the limit at the end of a window.
+     */
+    private void _adjust()
+    {
+        long   now        = System.nanoTime();
+        double seconds    = Math.max(1, now - this._windowStart) / 1e9;
+        double throughput = this._windowBytes / seconds;
+        double errorRate  = (double)this._windowErrors / this._windowRequests;
+        double latency    = (double)this._windowLatency / Math.max(1, this._windowRequests - this._windowErrors);
+        int    old        = this.getLimit();
+
+        if(this._windowRequests > this._windowErrors) {
+            this._minLatency = Math.min(this._minLatency, (long)latency);
+        }
+
+        boolean queueing = latency    > this._minLatency * AdaptiveLimit.LATENCY_TOLERANCE + AdaptiveLimit.LATENCY_SLACK &&
+                           throughput <= this._lastThroughput;
+
+        if(
+            errorRate > AdaptiveLimit.MAX_ERROR_RATE ||
+            queueing
+        ) {
+            this._limit = Math.max(this._min, this._limit / 2);
+        } else if(
+            this._inFlight + 1 >= old && // Only grow if the current limit is being used.
+            throughput >= this._lastThroughput * AdaptiveLimit.THROUGHPUT_DROP
+        ) {
+            this._limit = Math.min(this._max, this._limit + 1);
+        }
+
+        if(this.getLimit() != old) {
+            if(this.getLimit() > old) {
+                this._increases++;
+            } else {
+                this._decreases++;
+            }
+
+            if(this._history.size() >= AdaptiveLimit.MAX_HISTORY) {
+                this._history.remove(1); // Keep the starting limit.
+            }
+
+            this._history.add(this.getLimit());
+        }
+
+        this._lastThroughput = throughput;
+        this._windowStart    = now;
+        this._windowRequests = 0;
+        this._windowErrors   = 0;
+        this._windowLatency  = 0;
+        this._windowBytes    = 0;
+    }
+}
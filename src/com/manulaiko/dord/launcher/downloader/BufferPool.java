@@ -0,0 +1,180 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Buffer pool.
+ *
+ * Bounded pool of direct buffers used by the download workers, so
+ * downloading a file doesn't allocate a new buffer.
+ *
+ * Buffers are grouped in size classes, a request is served by the
+ * smallest class that fits it. Returned buffers beyond the limit of
+ * their class are dropped and left to the garbage collector.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class BufferPool
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int[] SIZES = new int[] {
+        16 * 1024,
+        64 * 1024,
+        256 * 1024,
+        1024 * 1024
+    };
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Free buffers of each size class.
+     */
+    private List<ConcurrentLinkedQueue<ByteBuffer>> _free;
+
+    /**
+     * Amount of free buffers of each size class.
+     */
+    private AtomicInteger[] _freeCount;
+
+    /**
+     * Maximum amount of free buffers kept for each size class.
+     */
+    private int[] _maxFree;
+
+    /**
+     * Amount of borrowed buffers.
+     */
+    private AtomicLong _borrowed = new AtomicLong();
+
+    /**
+     * Amount of allocated buffers.
+     */
+    private AtomicLong _allocated = new AtomicLong();
+
+    /**
+     * Amount of returned buffers that were dropped because the pool was full.
+     */
+    private AtomicLong _dropped = new AtomicLong();
+
+    /**
+     * Amount of buffers currently borrowed.
+     */
+    private AtomicInteger _inUse = new AtomicInteger();
+
+    /**
+     * Maximum amount of buffers borrowed at the same time.
+     */
+    private AtomicInteger _peakInUse = new AtomicInteger();
+
+    /**
+     * Constructor.
+     *
+     * @param memory Maximum amount of bytes kept in free buffers, split evenly between the size classes.
+     */
+    public BufferPool(long memory)
+    {
+        int classes = BufferPool.SIZES.length;
+
+        this._free      = new ArrayList<>(classes);
+        this._freeCount = new AtomicInteger[classes];
+        this._maxFree   = new int[classes];
+
+        for(int i = 0; i < classes; i++) {
+            this._free.add(new ConcurrentLinkedQueue<>());
+            this._freeCount[i] = new AtomicInteger();
+            this._maxFree[i]   = (int)Math.max(1, memory / classes / BufferPool.SIZES[i]);
+        }
+    }
+
+    /**
+     * Borrows a buffer.
+     *
+     * @param size Wanted size, the buffer can be bigger or, if it's bigger
+     *             than the largest size class, smaller.
+     *
+     * @return Cleared direct buffer.
+     */
+    public ByteBuffer borrow(long size)
+    {
+        int        i      = this._getSizeClass(size);
+        ByteBuffer buffer = this._free.get(i).poll();
+
+        if(buffer == null) {
+            buffer = ByteBuffer.allocateDirect(BufferPool.SIZES[i]);
+
+            this._allocated.incrementAndGet();
+        } else {
+            this._freeCount[i].decrementAndGet();
+        }
+
+        this._borrowed.incrementAndGet();
+        this._peakInUse.accumulateAndGet(this._inUse.incrementAndGet(), Math::max);
+
+        return buffer.clear();
+    }
+
+    /**
+     * Returns a borrowed buffer to the pool.
+     *
+     * @param buffer Borrowed buffer.
+     */
+    public void release(ByteBuffer buffer)
+    {
+        int i = this._getSizeClass(buffer.capacity());
+
+        this._inUse.decrementAndGet();
+
+        if(this._freeCount[i].incrementAndGet() > this._maxFree[i]) {
+            this._freeCount[i].decrementAndGet();
+            this._dropped.incrementAndGet();
+
+            return;
+        }
+
+        this._free.get(i).offer(buffer);
+    }
+
+    /**
+     * Returns pool usage stats.
+     *
+     * @return Pool usage stats.
+     */
+    public String getStats()
+    {
+        long borrowed  = this._borrowed.get();
+        long allocated = this._allocated.get();
+        long reused    = (borrowed == 0) ? 0 : (borrowed - allocated) * 100 / borrowed;
+
+        return "Buffers borrowed: "+ borrowed +
+               ", allocated: "+ allocated +
+               " ("+ reused +"% reused)"+
+               ", dropped: "+ this._dropped.get() +
+               ", peak in use: "+ this._peakInUse.get();
+    }
+
+    /**
+     * Returns the size class for a size.
+     *
+     * @param size Wanted size.
+     *
+     * @return Index of the smallest size class that fits `size`, or the largest one.
+     */
+    private int _getSizeClass(long size)
+    {
+        for(int i = 0; i < BufferPool.SIZES.length; i++) {
+            if(size <= BufferPool.SIZES[i]) {
+                return i;
+            }
+        }
+
+        return BufferPool.SIZES.length - 1;
+    }
+}
@@ -0,0 +1,150 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Circuit breaker.
+ *
+ * Stops sending requests to a host after too many consecutive failures.
+ *
+ * Once `threshold` requests in a row fail the circuit opens and requests
+ * fail right away for `cooldown` milliseconds. After that a single trial
+ * request is let through: if it succeeds the circuit closes again, if it
+ * fails it stays open for another cooldown.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class CircuitBreaker
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int STATE_CLOSED    = 0;
+    private static final int STATE_OPEN      = 1;
+    private static final int STATE_HALF_OPEN = 2;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Host name.
+     */
+    private String _host;
+
+    /**
+     * Consecutive failures that open the circuit.
+     */
+    private int _threshold;
+
+    /**
+     * Milliseconds the circuit stays open.
+     */
+    private long _cooldown;
+
+    /**
+     * Current state.
+     */
+    private int _state = CircuitBreaker.STATE_CLOSED;
+
+    /**
+     * Consecutive failures.
+     */
+    private int _failures = 0;
+
+    /**
+     * Time at which the circuit lets a trial request through.
+     */
+    private long _openUntil = 0;
+
+    /**
+     * Whether the trial request is in flight or not.
+     */
+    private boolean _trial = false;
+
+    /**
+     * Constructor.
+     *
+     * @param host      Host name.
+     * @param threshold Consecutive failures that open the circuit.
+     * @param cooldown  Milliseconds the circuit stays open.
+     */
+    public CircuitBreaker(String host, int threshold, long cooldown)
+    {
+        this._host      = host;
+        this._threshold = threshold;
+        this._cooldown  = cooldown;
+    }
+
+    /**
+     * Checks whether a request can be sent.
+     *
+     * @throws CircuitOpenException If the circuit is open.
+     */
+    public synchronized void acquire() throws CircuitOpenException
+    {
+        if(this._state == CircuitBreaker.STATE_OPEN) {
+            if(System.currentTimeMillis() < this._openUntil) {
+                throw new CircuitOpenException(this._host);
+            }
+
+            this._state = CircuitBreaker.STATE_HALF_OPEN;
+            this._trial = false;
+        }
+
+        if(this._state == CircuitBreaker.STATE_HALF_OPEN) {
+            if(this._trial) {
+                throw new CircuitOpenException(this._host);
+            }
+
+            this._trial = true;
+        }
+    }
+
+    /**
+     * Reports a successful request.
+     */
+    public synchronized void success()
+    {
+        if(this._state != CircuitBreaker.STATE_CLOSED) {
+            Console.println(this._host +" is answering again.");
+        }
+
+        this._state    = CircuitBreaker.STATE_CLOSED;
+        this._failures = 0;
+        this._trial    = false;
+    }
+
+    /**
+     * Reports a request that ended without an answer from the host.
+     *
+     * I.e. it was interrupted. If it was the trial request, the next
+     * one is let through instead.
+     */
+    public synchronized void cancel()
+    {
+        if(this._state == CircuitBreaker.STATE_HALF_OPEN) {
+            this._trial = false;
+        }
+    }
+
+    /**
+     * Reports a failed request.
+     */
+    public synchronized void failure()
+    {
+        this._failures++;
+
+        if(
+            this._state    == CircuitBreaker.STATE_HALF_OPEN ||
+            this._failures >= this._threshold
+        ) {
+            if(this._state != CircuitBreaker.STATE_OPEN) {
+                Console.println(this._host +" keeps failing, pausing requests for "+ (this._cooldown / 1000) +" seconds.");
+            }
+
+            this._state     = CircuitBreaker.STATE_OPEN;
+            this._openUntil = System.currentTimeMillis() + this._cooldown;
+            this._trial     = false;
+        }
+    }
+}
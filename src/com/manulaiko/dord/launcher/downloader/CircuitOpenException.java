@@ -0,0 +1,31 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.IOException;
+
+/**
+ * Circuit open exception.
+ *
+ * Thrown when a request isn't sent because its host keeps failing.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class CircuitOpenException extends IOException
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long serialVersionUID = 1L;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param host Failing host.
+     */
+    public CircuitOpenException(String host)
+    {
+        super("Too many errors from "+ host +", not sending more requests for now");
+    }
+}
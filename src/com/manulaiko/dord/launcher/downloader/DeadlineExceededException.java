@@ -0,0 +1,31 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Deadline exceeded exception.
+ *
+ * Thrown when a download is cancelled because the deadline of the run has passed.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class DeadlineExceededException extends InterruptedIOException
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long serialVersionUID = 1L;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Constructor.
+     *
+     * @param path Cancelled file.
+     */
+    public DeadlineExceededException(String path)
+    {
+        super("Deadline reached, cancelled "+ path);
+    }
+}
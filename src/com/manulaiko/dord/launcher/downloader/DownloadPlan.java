@@ -0,0 +1,117 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.StreamSupport;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Download plan.
+ *
+ * Keeps the files planned for download in this run, across all categories.
+ * Paths are normalized before they're queued, and the ones that were
+ * already planned (by the same or another category) are dropped.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class DownloadPlan
+{
+    /**
+     * Normalized paths of the planned files.
+     */
+    private Set<String> _planned = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Amount of dropped paths.
+     */
+    private AtomicLong _duplicates = new AtomicLong();
+
+    /**
+     * Adds the files of a category to the plan.
+     *
+     * Files are read as the returned iterator is, so a manifest can still
+     * be streamed through it.
+     *
+     * @param files    Files of the category.
+     * @param category Category the files belong to.
+     *
+     * @return Normalized paths of the files that weren't planned yet.
+     */
+    public Iterator<String> add(Iterator<String> files, String category)
+    {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(files, Spliterator.ORDERED), false)
+                            .map(DownloadPlan::normalize)
+                            .filter((path) -> this._add(path, category))
+                            .iterator();
+    }
+
+    /**
+     * Returns the amount of dropped paths.
+     *
+     * @return Amount of paths that were already planned.
+     */
+    public long getDuplicates()
+    {
+        return this._duplicates.get();
+    }
+
+    /**
+     * Normalizes a path.
+     *
+     * Backslashes become slashes, empty and `.` segments are removed and
+     * `..` segments remove the previous one.
+     *
+     * @param path Path on remote host to file.
+     *
+     * @return Normalized path, starting with `/`.
+     */
+    public static String normalize(String path)
+    {
+        ArrayDeque<String> segments = new ArrayDeque<>();
+
+        for(String segment : path.replace('\\', '/').split("/")) {
+            if(
+                segment.isEmpty() ||
+                segment.equals(".")
+            ) {
+                continue;
+            }
+
+            if(segment.equals("..")) {
+                segments.pollLast();
+
+                continue;
+            }
+
+            segments.add(segment);
+        }
+
+        return "/"+ String.join("/", segments);
+    }
+
+    /**
+     * Adds a file to the plan.
+     *
+     * @param path     Normalized path.
+     * @param category Category the file belongs to.
+     *
+     * @return `true` if it wasn't planned yet, `false` if it's a duplicate.
+     */
+    private boolean _add(String path, String category)
+    {
+        if(this._planned.add(path)) {
+            return true;
+        }
+
+        Console.debug("Dropping duplicated file '"+ path +"' from "+ category);
+        this._duplicates.incrementAndGet();
+
+        return false;
+    }
+}
@@ -0,0 +1,296 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.dord.launcher.downloader.transport.Request;
+import com.manulaiko.dord.launcher.downloader.transport.Response;
+
+/**
+ * Download state.
+ *
+ * What the downloader knows about the downloaded files: their validators,
+ * the manifest version they were downloaded with and their size, kept
+ * between runs in state files. Also the files being written, so they can
+ * be truncated back to their written bytes if the run is killed.
+ *
+ * Files are identified by their key (see `getKey`).
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class DownloadState
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long CHECKPOINT_INTERVAL = 10 * 1000;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * `ETag` and `Last-Modified` headers of the downloaded files.
+     */
+    private StateFile _validators;
+
+    /**
+     * Manifest versions of the downloaded files.
+     */
+    private StateFile _downloadedVersions;
+
+    /**
+     * Sizes of the downloaded files.
+     */
+    private StateFile _sizes;
+
+    /**
+     * Manifest versions of the files.
+     */
+    private ConcurrentHashMap<String, String> _versions = new ConcurrentHashMap<>();
+
+    /**
+     * Files being written and the bytes written from their start.
+     */
+    private ConcurrentHashMap<PartFile, AtomicLong> _writing = new ConcurrentHashMap<>();
+
+    /**
+     * Time of the last time the state was saved, from `System.currentTimeMillis`.
+     */
+    private AtomicLong _lastCheckpoint = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * Constructor.
+     *
+     * Loads the state files, if any.
+     *
+     * @param path Download path.
+     */
+    public DownloadState(File path)
+    {
+        this._validators         = new StateFile(path, "validators");
+        this._downloadedVersions = new StateFile(path, "versions");
+        this._sizes              = new StateFile(path, "sizes");
+    }
+
+    /**
+     * Returns the key of a file.
+     *
+     * It's the normalized path from the manifest, so it's the same for
+     * every mirror and doesn't depend on how the URL escaped it.
+     *
+     * @param url URL of the file.
+     *
+     * @return Key of the file.
+     */
+    public static String getKey(URL url)
+    {
+        try {
+            return DownloadPlan.normalize(url.toURI().getPath());
+        } catch(URISyntaxException e) {
+            return DownloadPlan.normalize(url.getPath());
+        }
+    }
+
+    /**
+     * Sets the manifest version of a file.
+     *
+     * @param path    Path on remote host to file.
+     * @param version File version.
+     */
+    public void setVersion(String path, String version)
+    {
+        this._versions.put(DownloadPlan.normalize(path), version);
+    }
+
+    /**
+     * Returns the manifest version of a file.
+     *
+     * @param key Key of the file.
+     *
+     * @return File version, `null` if the manifest doesn't have one.
+     */
+    public String getVersion(String key)
+    {
+        return this._versions.get(key);
+    }
+
+    /**
+     * Checks whether a version of a file was already downloaded or not.
+     *
+     * @param key     Key of the file.
+     * @param version File version, from its manifest.
+     *
+     * @return `true` if the last download of the file had `version`, `false` if not.
+     */
+    public boolean isDownloaded(String key, String version)
+    {
+        return (
+            version != null &&
+            version.equals(this._downloadedVersions.get(key))
+        );
+    }
+
+    /**
+     * Returns the size a file had when it was last downloaded.
+     *
+     * @param path Path on remote host to file.
+     *
+     * @return Size of the file, `-1` if it's unknown.
+     */
+    public long getSize(String path)
+    {
+        String size = this._sizes.get(DownloadPlan.normalize(path));
+        if(size != null) {
+            try {
+                return Long.parseLong(size);
+            } catch(NumberFormatException e) {
+                // Ignore, the state file was edited.
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Makes a request conditional.
+     *
+     * Uses the stored `ETag` and `Last-Modified` headers of the file. Files
+     * downloaded before they were stored use the modification date of the
+     * local copy instead, which is never older than the remote one.
+     *
+     * @param request Request to the file.
+     * @param file    Local copy of the file.
+     */
+    public void setValidators(Request request, File file)
+    {
+        String key      = DownloadState.getKey(request.getUrl());
+        String etag     = this._validators.get(key +"#etag");
+        String modified = this._validators.get(key +"#modified");
+
+        if(etag != null) {
+            request.setHeader("If-None-Match", etag);
+        }
+
+        if(
+            modified == null &&
+            etag     == null
+        ) {
+            modified = DateTimeFormatter.RFC_1123_DATE_TIME.format(
+                    Instant.ofEpochMilli(file.lastModified()).atOffset(ZoneOffset.UTC)
+            );
+        }
+
+        if(modified != null) {
+            request.setHeader("If-Modified-Since", modified);
+        }
+    }
+
+    /**
+     * Stores that the local copy of a file is up to date.
+     *
+     * @param key     Key of the file.
+     * @param version File version, from its manifest.
+     */
+    public void notModified(String key, String version)
+    {
+        this._downloadedVersions.put(key, version);
+        this._checkpoint();
+    }
+
+    /**
+     * Stores a downloaded file.
+     *
+     * @param key     Key of the file.
+     * @param version File version, from its manifest.
+     * @param r       Server response.
+     * @param file    Downloaded file.
+     */
+    public void downloaded(String key, String version, Response r, File file)
+    {
+        this._validators.put(key +"#etag", r.getHeader("ETag"));
+        this._validators.put(key +"#modified", r.getHeader("Last-Modified"));
+        this._downloadedVersions.put(key, version);
+        this._sizes.put(key, String.valueOf(file.length()));
+        this._checkpoint();
+    }
+
+    /**
+     * Starts tracking a file being written.
+     *
+     * @param part     Partial file.
+     * @param position Bytes written from its start.
+     */
+    public void startWriting(PartFile part, AtomicLong position)
+    {
+        this._writing.put(part, position);
+    }
+
+    /**
+     * Stops tracking a file being written.
+     *
+     * @param part Partial file.
+     */
+    public void stopWriting(PartFile part)
+    {
+        this._writing.remove(part);
+    }
+
+    /**
+     * Truncates the files being written back to their written bytes.
+     *
+     * Runs on shutdown so files preallocated by an interrupted run can be resumed.
+     */
+    public void truncateWriting()
+    {
+        this._writing.forEach((part, position) -> {
+            try {
+                part.truncate(position.get());
+            } catch(IOException e) {
+                // Ignore
+            }
+        });
+    }
+
+    /**
+     * Saves the state files.
+     *
+     * The state isn't saved when only planning the downloads.
+     */
+    public void save()
+    {
+        if(Settings.plan) {
+            return;
+        }
+
+        this._validators.save();
+        this._downloadedVersions.save();
+        this._sizes.save();
+    }
+
+    /**
+     * Saves the state if it wasn't saved in the last `CHECKPOINT_INTERVAL` milliseconds.
+     *
+     * So a run that's killed before closing the downloader loses
+     * only what it learned since then.
+     */
+    private void _checkpoint()
+    {
+        long now  = System.currentTimeMillis();
+        long last = this._lastCheckpoint.get();
+
+        if(
+            now - last >= DownloadState.CHECKPOINT_INTERVAL &&
+            this._lastCheckpoint.compareAndSet(last, now)
+        ) {
+            this.save();
+        }
+    }
+}
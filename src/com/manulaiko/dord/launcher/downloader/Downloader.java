@@ -2,17 +2,24 @@ package com.manulaiko.dord.launcher.downloader;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.net.URL;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.ToLongFunction;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import com.manulaiko.dord.launcher.Main;
 import com.manulaiko.dord.launcher.Settings;
 import com.manulaiko.tabitha.Console;
 import org.w3c.dom.Document;
-import org.w3c.dom.Node;
-import org.w3c.dom.NodeList;
 
 /**
  * Downloads the files.
@@ -26,6 +33,26 @@ public class Downloader
      */
     private FileDownloader _cd;
 
+    /**
+     * Queue shared by all categories.
+     */
+    private WorkQueue _queue;
+
+    /**
+     * XML files downloaded in this run.
+     */
+    private ManifestCache _manifests;
+
+    /**
+     * Files planned for download in this run.
+     */
+    private DownloadPlan _plan = new DownloadPlan();
+
+    /**
+     * Sizes the files instead of downloading them, `null` unless planning.
+     */
+    private Planner _planner;
+
     /**
      * Path to download the files.
      */
@@ -44,7 +71,12 @@ public class Downloader
     /**
      * Downloaded bytes.
      */
-    private long _bytes;
+    private AtomicLong _bytes = new AtomicLong();
+
+    /**
+     * Bytes received, before decoding them.
+     */
+    private AtomicLong _wireBytes = new AtomicLong();
 
     /**
      * Constructor.
@@ -53,67 +85,111 @@ public class Downloader
      */
     public Downloader(File path)
     {
-        this._path = path;
-        this._cd   = new FileDownloader(Settings.host, path);
+        this._path      = path;
+        this._cd        = new FileDownloader(Settings.host, path);
+        this._queue     = new WorkQueue(this._cd);
+        this._manifests = new ManifestCache(this._cd, path);
+
+        if(Settings.plan) {
+            this._planner = new Planner(this._cd, path);
+        }
     }
 
     /**
      * Starts the download.
+     *
+     * Each category runs on its own thread, so manifests are downloaded and
+     * parsed at the same time while the files already queued are downloaded.
+     *
+     * When planning, the files are probed instead and the plan is printed.
      */
     public void start()
     {
-        if(!Settings.proxyHost.isEmpty()) {
-            System.setProperty("http.proxyHost", Settings.proxyHost);
-            System.setProperty("http.proxyPort", Settings.proxyPort +"");
+        this._startTime = System.currentTimeMillis();
+        if(Settings.deadline > 0) {
+            this._cd.setDeadline(Settings.deadline * 1000L);
+        }
+        if(Settings.warmUpConnections > 0) {
+            this._cd.warmUp(Settings.warmUpConnections);
         }
 
-        this._startTime = System.currentTimeMillis();
+        try(ExecutorService categories = Executors.newVirtualThreadPerTaskExecutor()) {
+            if(this._shouldDownload(Settings.downloadSWF)) {
+                categories.execute(this::swf);
+            }
 
-        if(
-            Settings.downloadAll ||
-            Settings.downloadSWF
-        ) {
-            this.swf();
-        }
+            if(this._shouldDownload(Settings.downloadXML)) {
+                categories.execute(this::xml);
+            }
 
-        if(
-            Settings.downloadAll ||
-            Settings.downloadXML
-        ) {
-            this.xml();
-        }
+            if(this._shouldDownload(Settings.downloadLoadingScreenAssets)) {
+                categories.execute(this::loadingScreenAssets);
+            }
 
-        if(
-            Settings.downloadAll ||
-            Settings.downloadLoadingScreenAssets
-        ) {
-            this.loadingScreenAssets();
-        }
+            if(this._shouldDownload(Settings.download2D)) {
+                categories.execute(this::graphics2D);
+            }
 
-        if(
-            Settings.downloadAll ||
-            Settings.download2D
-        ) {
-            this.graphics2D();
+            if(this._shouldDownload(Settings.download3D)) {
+                categories.execute(this::graphics3D);
+            }
+
+            if(this._shouldDownload(Settings.downloadImages)) {
+                categories.execute(this::images);
+            }
         }
 
-        if(
-            Settings.downloadAll ||
-            Settings.download3D
-        ) {
-            this.graphics3D();
+        this._queue.close();
+        this._endTime = System.currentTimeMillis();
+
+        this._cd.close();
+
+        if(this._planner != null) {
+            this._planner.print();
+
+            return;
         }
 
-        if(
-            Settings.downloadAll ||
-            Settings.downloadImages
-        ) {
-            this.images();
+        this.printStats("", this._bytes.get(), this._wireBytes.get(), this._startTime, this._endTime);
+
+        if(this._cd.isExpired()) {
+            Console.println("Deadline of "+ Settings.deadline +" seconds reached, "+ this._cd.getCancelled() +" downloads cancelled");
         }
 
-        this._endTime = System.currentTimeMillis();
+        if(this._cd.getConcurrency() != null) {
+            Console.println(this._cd.getConcurrency().getStats());
+        }
+        if(!this._cd.getHedgeStats().isEmpty()) {
+            Console.println(this._cd.getHedgeStats());
+        }
+        if(this._plan.getDuplicates() > 0) {
+            Console.println("Dropped "+ this._plan.getDuplicates() +" duplicated files");
+        }
+        if(this._cd.getUnchanged() > 0) {
+            Console.println("Skipped "+ this._cd.getUnchanged() +" unchanged files");
+        }
+        if(this._cd.getProxies().size() > 1) {
+            Console.println(this._cd.getProxies().getStats());
+        }
+        if(this._cd.getMirrors().size() > 1) {
+            Console.println(this._cd.getMirrors().getStats());
+        }
+        if(!this._cd.getRetryStats().isEmpty()) {
+            Console.println(this._cd.getRetryStats());
+        }
+        Console.debug(this._cd.getBufferPool().getStats());
+    }
 
-        this.printStats(this._bytes, this._startTime, this._endTime);
+    /**
+     * Checks whether a category must be downloaded or not.
+     *
+     * @param enabled Whether the category was requested or not.
+     *
+     * @return `true` if it was requested (or everything was) and the deadline hasn't passed.
+     */
+    private boolean _shouldDownload(boolean enabled)
+    {
+        return (Settings.downloadAll || enabled) && !this._cd.isExpired();
     }
 
     /**
@@ -127,18 +203,14 @@ public class Downloader
             "/spacemap/preloader.swf"
         };
 
-        Console.println("Downloading swf files...");
-        long start = System.currentTimeMillis();
-        long bytes = this._cd.download(files);
-        long end   = System.currentTimeMillis();
-
-        this.printStats(bytes, start, end);
-
-        this._bytes += bytes;
+        this._download("swf", "swf", Arrays.asList(files).iterator());
     }
 
     /**
      * Downloads XML files.
+     *
+     * They go through the manifest cache, so the ones parsed by other
+     * categories are only downloaded once.
      */
     public void xml()
     {
@@ -151,14 +223,7 @@ public class Downloader
                 "/spacemap/xml/resources_3d.xml"
         };
 
-        Console.println("Downloading xml files...");
-        long start = System.currentTimeMillis();
-        long bytes = this._cd.download(files);
-        long end   = System.currentTimeMillis();
-
-        this.printStats(bytes, start, end);
-
-        this._bytes += bytes;
+        this._download("xml", "xml", Arrays.asList(files).iterator(), (path) -> this._manifests.download(path, "xml"));
     }
 
     /**
@@ -166,14 +231,7 @@ public class Downloader
      */
     public void graphics2D()
     {
-        Console.println("Downloading 2D graphic files...");
-        long start = System.currentTimeMillis();
-        long bytes = this._cd.download(this.parseXML("/spacemap/xml/resources.xml", "/spacemap"));
-        long end   = System.currentTimeMillis();
-
-        this.printStats(bytes, start, end);
-
-        this._bytes += bytes;
+        this._download("2D graphic", "2D", this.streamXML("/spacemap/xml/resources.xml", "/spacemap"));
     }
 
     /**
@@ -181,14 +239,7 @@ public class Downloader
      */
     public void graphics3D()
     {
-        Console.println("Downloading 3D graphic files...");
-        long start = System.currentTimeMillis();
-        long bytes = this._cd.download(this.parseXML("/spacemap/xml/resources_3d.xml", "/spacemap"));
-        long end   = System.currentTimeMillis();
-
-        this.printStats(bytes, start, end);
-
-        this._bytes += bytes;
+        this._download("3D graphic", "3D", this.streamXML("/spacemap/xml/resources_3d.xml", "/spacemap"));
     }
 
     /**
@@ -196,19 +247,10 @@ public class Downloader
      */
     public void images()
     {
-        ArrayList<String> items        = this.parseXML("/do_img/global/xml/resources_items.xml", "/do_img/global");
-        ArrayList<String> achievements = this.parseXML("/do_img/global/xml/resourcesAchievements.xml", "/do_img/global");
-
-        items.addAll(achievements);
-
-        Console.println("Downloading image files...");
-        long start = System.currentTimeMillis();
-        long bytes = this._cd.download(items);
-        long end   = System.currentTimeMillis();
+        Iterator<String> items        = this.streamXML("/do_img/global/xml/resources_items.xml", "/do_img/global");
+        Iterator<String> achievements = this.streamXML("/do_img/global/xml/resourcesAchievements.xml", "/do_img/global");
 
-        this.printStats(bytes, start, end);
-
-        this._bytes += bytes;
+        this._download("image", "images", this._concat(items, achievements));
     }
 
     /**
@@ -216,14 +258,61 @@ public class Downloader
      */
     public void loadingScreenAssets()
     {
-        Console.println("Downloading loadingScreen assets files...");
-        long start = System.currentTimeMillis();
-        long bytes = this._cd.download(this.parseXML("/spacemap/xml/assets_loadingScreen.xml", "/spacemap"));
-        long end   = System.currentTimeMillis();
+        this._download("loadingScreen assets", "loadingScreen", this.streamXML("/spacemap/xml/assets_loadingScreen.xml", "/spacemap"));
+    }
+
+    /**
+     * Queues the files of a category and waits for them.
+     *
+     * @param name     Name of the category, for the messages.
+     * @param category Category the files belong to.
+     * @param files    Files to download.
+     */
+    private void _download(String name, String category, Iterator<String> files)
+    {
+        this._download(name, category, files, (path) -> this._cd.download(path, category));
+    }
+
+    /**
+     * Queues the files of a category and waits for them.
+     *
+     * Files already planned by this or another category are dropped
+     * before they're queued.
+     *
+     * When planning, the files are added to the plan instead.
+     *
+     * @param name     Name of the category, for the messages.
+     * @param category Category the files belong to.
+     * @param files    Files to download.
+     * @param download Downloads a file and returns the downloaded bytes.
+     */
+    private void _download(String name, String category, Iterator<String> files, ToLongFunction<String> download)
+    {
+        if(this._planner != null) {
+            Console.println("Planning "+ name +" files...");
+
+            download = (path) -> this._planner.add(path, category);
+        } else {
+            Console.println("Downloading "+ name +" files...");
+        }
+
+        try {
+            WorkQueue.Category c     = this._queue.submit(this._plan.add(files, category), category, download);
+            long               bytes = c.await();
+
+            if(this._planner != null) {
+                return;
+            }
+
+            long wire = this._cd.getWireBytes(category);
 
-        this.printStats(bytes, start, end);
+            this.printStats(name +" files", bytes, wire, c.getStart(), c.getEnd());
 
-        this._bytes += bytes;
+            this._bytes.addAndGet(bytes);
+            this._wireBytes.addAndGet(wire);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -240,10 +329,37 @@ public class Downloader
      */
     public void printStats(long bytes, long start, long end)
     {
-        String downloadedBytes = "undefined";
-        String elapsedTime     = "undefined";
-        long   millis          = end - start;
-        long   kbs             = 0;
+        this.printStats("", bytes, start, end);
+    }
+
+    /**
+     * Prints download stats of some files.
+     *
+     * @param name  Name of the downloaded files, empty for all of them.
+     * @param bytes Downloaded bytes.
+     * @param start Download start time.
+     * @param end   Download end time.
+     */
+    public void printStats(String name, long bytes, long start, long end)
+    {
+        this.printStats(name, bytes, bytes, start, end);
+    }
+
+    /**
+     * Prints download stats of some files.
+     *
+     * The received bytes are printed too if they're different from the
+     * stored ones (i.e. some files were compressed).
+     *
+     * @param name  Name of the downloaded files, empty for all of them.
+     * @param bytes Stored bytes.
+     * @param wire  Received bytes.
+     * @param start Download start time.
+     * @param end   Download end time.
+     */
+    public void printStats(String name, long bytes, long wire, long start, long end)
+    {
+        long millis = end - start;
 
         if(bytes <= 0) {
             bytes = 1;
@@ -252,78 +368,82 @@ public class Downloader
             millis = 1;
         }
 
-        int unit = 1024;
-        if(bytes >= unit) {
-            int exp = (int)(Math.log(bytes) / Math.log(unit));
-            String pre = "KMGTPE".charAt(exp-1) +"i";
-
-            downloadedBytes = String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
-        } else {
-            downloadedBytes = bytes +" B";
-        }
-
-        long second = (millis / 1000) % 60;
-        long minute = (millis / (1000 * 60)) % 60;
-        long hour   = (millis / (1000 * 60 * 60)) % 24;
-
-        if(hour > 0) {
-            elapsedTime = String.format("%02d hours %02d minutes and %02d seconds", hour, minute, second);
-        } else {
-            elapsedTime = String.format("%02d minutes and %02d seconds", minute, second);
-        }
+        String downloadedBytes = Downloader.formatBytes(bytes);
+        String elapsedTime     = Downloader.formatTime(millis);
 
         long seconds = millis / 1000;
         if(seconds <= 0) {
             seconds = 1;
         }
 
-        kbs = (bytes / unit) / seconds;
+        long kbs = (bytes / 1024) / seconds;
+
+        if(!name.isEmpty()) {
+            downloadedBytes += " of "+ name;
+        }
+        if(
+            wire > 0 &&
+            wire != bytes
+        ) {
+            downloadedBytes += " ("+ Downloader.formatBytes(wire) +" transferred)";
+        }
 
         Console.println("Downloaded "+ downloadedBytes +" in "+ elapsedTime +" at "+ kbs +" KiB/s");
     }
 
     /**
-     * Parses a XML file.
+     * Formats an amount of bytes.
      *
-     * @param path   Path to XML file.
-     * @param suffix Suffix for the files of the XML file.
+     * @param bytes Amount of bytes.
      *
-     * @return Files from XML file.
+     * @return Bytes with the largest binary unit.
      */
-    public ArrayList<String> parseXML(String path, String suffix)
+    public static String formatBytes(long bytes)
     {
-        ArrayList<String>       files     = new ArrayList<>();
-        HashMap<String, String> locations = new HashMap<>();
+        int unit = 1024;
+        if(bytes < unit) {
+            return bytes +" B";
+        }
 
-        Document xml = this.loadXML(path);
-        if(xml == null) {
-            Console.debug("Couldn't download '"+ path +"'!");
+        int exp = (int)(Math.log(bytes) / Math.log(unit));
+        String pre = "KMGTPE".charAt(exp-1) +"i";
 
-            return files;
-        }
+        return String.format("%.1f %sB", bytes / Math.pow(unit, exp), pre);
+    }
 
-        NodeList l = xml.getElementsByTagName("location");
-        NodeList f = xml.getElementsByTagName("file");
+    /**
+     * Formats an amount of time.
+     *
+     * @param millis Amount of milliseconds.
+     *
+     * @return Hours (if any), minutes and seconds.
+     */
+    public static String formatTime(long millis)
+    {
+        long second = (millis / 1000) % 60;
+        long minute = (millis / (1000 * 60)) % 60;
+        long hour   = (millis / (1000 * 60 * 60)) % 24;
 
-        for(int i = 0; i < l.getLength(); i++) {
-            Node location = l.item(i);
-            locations.put(
-                    location.getAttributes().getNamedItem("id").getTextContent(),
-                    location.getAttributes().getNamedItem("path").getTextContent()
-            );
+        if(hour > 0) {
+            return String.format("%02d hours %02d minutes and %02d seconds", hour, minute, second);
         }
 
-        for(int i = 0; i < f.getLength(); i++) {
-            Node file = f.item(i);
+        return String.format("%02d minutes and %02d seconds", minute, second);
+    }
 
-            String location  = locations.get(file.getAttributes().getNamedItem("location").getTextContent());
-            String name      = file.getAttributes().getNamedItem("name").getTextContent();
-            String extension = file.getAttributes().getNamedItem("type").getTextContent();
+    /**
+     * Parses a XML file.
+     *
+     * @param path   Path to XML file.
+     * @param suffix Suffix for the files of the XML file.
+     *
+     * @return Files from XML file.
+     */
+    public ArrayList<String> parseXML(String path, String suffix)
+    {
+        ArrayList<String> files = new ArrayList<>();
 
-            files.add(
-                    suffix +"/"+ location + name +"."+ extension
-            );
-        }
+        this.streamXML(path, suffix).forEachRemaining(files::add);
 
         return files;
     }
@@ -337,15 +457,15 @@ public class Downloader
      */
     public Document loadXML(String path)
     {
-        File f = new File(Main.getPath(this._path, path));
-        if(!f.exists()) {
-            f = this._downloadXML(path);
+        byte[] xml = this._manifests.get(path, "xml");
+        if(xml == null) {
+            return null;
         }
 
         try {
             DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
             DocumentBuilder dBuilder = dbFactory.newDocumentBuilder();
-            Document doc = dBuilder.parse(f);
+            Document doc = dBuilder.parse(new ByteArrayInputStream(xml));
 
             doc.normalizeDocument();
 
@@ -358,23 +478,49 @@ public class Downloader
     }
 
     /**
-     * Downloads a XML file.
+     * Parses a XML file while it's being read.
      *
-     * @param path Path to file.
+     * The files are returned while the XML file is being read, so their
+     * downloads can start before it has been completely parsed.
+     *
+     * @param path   Path to XML file.
+     * @param suffix Suffix for the files of the XML file.
+     *
+     * @return Files from XML file.
      */
-    private File _downloadXML(String path)
+    public Iterator<String> streamXML(String path, String suffix)
     {
-        try {
-            URL  url = new URL("http://" + Settings.host + path);
-            File tmp = File.createTempFile(path.replaceAll("/", "-"), ".xml");
+        byte[] xml = this._manifests.get(path, "xml");
+        if(xml == null) {
+            Console.debug("Couldn't download '"+ path +"'!");
 
-            this._cd.download(url, tmp.getAbsolutePath());
+            return Collections.emptyIterator();
+        }
 
-            return tmp;
+        try {
+            return new ManifestReader(path, new ByteArrayInputStream(xml), suffix, this._cd::setVersion);
         } catch(Exception e) {
-            // Ignore
+            Console.debug("Couldn't parse '"+ path +"'!");
         }
 
-        return null;
+        return Collections.emptyIterator();
+    }
+
+    /**
+     * Joins the files of two XML files.
+     *
+     * The second one isn't read until the first one is done.
+     *
+     * @param first  Files of the first XML file.
+     * @param second Files of the second XML file.
+     *
+     * @return Files of both XML files.
+     */
+    private Iterator<String> _concat(Iterator<String> first, Iterator<String> second)
+    {
+        return Stream.concat(
+                StreamSupport.stream(Spliterators.spliteratorUnknownSize(first, Spliterator.ORDERED), false),
+                StreamSupport.stream(Spliterators.spliteratorUnknownSize(second, Spliterator.ORDERED), false)
+        ).iterator();
     }
 }
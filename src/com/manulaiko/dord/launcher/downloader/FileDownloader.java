@@ -1,15 +1,42 @@
 package com.manulaiko.dord.launcher.downloader;
 
+import java.io.EOFException;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.net.MalformedURLException;
+import java.net.Proxy;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 import com.manulaiko.dord.launcher.Main;
 import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.dord.launcher.downloader.transport.HttpClientTransport;
+import com.manulaiko.dord.launcher.downloader.transport.HttpStatusException;
+import com.manulaiko.dord.launcher.downloader.transport.PipeliningTransport;
+import com.manulaiko.dord.launcher.downloader.transport.Request;
+import com.manulaiko.dord.launcher.downloader.transport.Resolver;
+import com.manulaiko.dord.launcher.downloader.transport.Response;
+import com.manulaiko.dord.launcher.downloader.transport.Transport;
+import com.manulaiko.dord.launcher.downloader.transport.URLConnectionTransport;
 import com.manulaiko.tabitha.Console;
 
 /**
@@ -21,155 +48,1492 @@ import com.manulaiko.tabitha.Console;
  */
 public class FileDownloader
 {
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long DEFAULT_BUFFER_SIZE = 256 * 1024;
+    private static final long MAX_RETRY_DELAY     = 30 * 1000;
+
+    private static final String[] TEXT_EXTENSIONS = new String[] {
+        ".xml", ".php", ".txt", ".json", ".js", ".css", ".html", ".htm"
+    };
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Mirrors of the base host.
+     */
+    private MirrorPool _mirrors;
+
     /**
-     * Base host.
+     * Proxies to send the requests through.
      */
-    private String _host;
+    private ProxyPool _proxies = new ProxyPool(
+            Settings.proxies,
+            Settings.proxyConnections,
+            Settings.breakerThreshold,
+            Settings.breakerCooldown * 1000L
+    );
 
     /**
      * Path to save the files.
      */
     private File _path;
 
+    /**
+     * Open connections limit for each host.
+     */
+    private ConcurrentHashMap<String, Semaphore> _connections = new ConcurrentHashMap<>();
+
+    /**
+     * Paths of the files being downloaded.
+     */
+    private Set<String> _downloading = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Hosts that ignored a range request, their files aren't segmented.
+     */
+    private Set<String> _unsegmentable = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Resolver of the host names.
+     */
+    private Resolver _resolver = new Resolver(Settings.dnsTtl * 1000L);
+
+    /**
+     * Transport used to send the requests.
+     */
+    private Transport _transport;
+
+    /**
+     * State of the downloaded files.
+     */
+    private DownloadState _state;
+
+    /**
+     * Amount of files skipped because their version didn't change.
+     */
+    private AtomicLong _unchanged = new AtomicLong();
+
+    /**
+     * Buffers used to copy the downloaded bytes.
+     */
+    private BufferPool _buffers = new BufferPool(Settings.bufferPoolMemory * 1024L * 1024L);
+
+    /**
+     * Downloaded bytes per second limit for all hosts, `null` if there's no limit.
+     */
+    private RateLimiter _bytesLimit;
+
+    /**
+     * Requests per second limit for all hosts, `null` if there's no limit.
+     */
+    private RateLimiter _requestsLimit;
+
+    /**
+     * Downloaded bytes per second limit of each host.
+     */
+    private ConcurrentHashMap<String, RateLimiter> _hostBytesLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Requests per second limit of each host.
+     */
+    private ConcurrentHashMap<String, RateLimiter> _hostRequestsLimits = new ConcurrentHashMap<>();
+
+    /**
+     * Adaptive limit of requests in flight, `null` if it's disabled.
+     */
+    private AdaptiveLimit _concurrency;
+
+    /**
+     * Retry policy for failed downloads.
+     */
+    private RetryPolicy _retry = new RetryPolicy(Settings.retries, Settings.retryDelay, FileDownloader.MAX_RETRY_DELAY);
+
+    /**
+     * Circuit breaker of each host.
+     */
+    private ConcurrentHashMap<String, CircuitBreaker> _breakers = new ConcurrentHashMap<>();
+
+    /**
+     * Amount of retried downloads.
+     */
+    private AtomicLong _retries = new AtomicLong();
+
+    /**
+     * Amount of downloads not sent because their host's circuit was open.
+     */
+    private AtomicLong _rejected = new AtomicLong();
+
+    /**
+     * Response latencies of each category.
+     */
+    private ConcurrentHashMap<String, LatencyTracker> _latencies = new ConcurrentHashMap<>();
+
+    /**
+     * Executor that sends hedged requests, `null` if requests aren't hedged.
+     */
+    private ExecutorService _hedging;
+
+    /**
+     * Amount of hedge requests sent.
+     */
+    private AtomicLong _hedgesSent = new AtomicLong();
+
+    /**
+     * Amount of hedge requests that answered before the original one.
+     */
+    private AtomicLong _hedgesWon = new AtomicLong();
+
+    /**
+     * Watchdog that aborts idle responses and enforces the deadline.
+     */
+    private Watchdog _watchdog = new Watchdog(Settings.idleTimeout * 1000L);
+
+    /**
+     * Amount of downloads cancelled by the deadline.
+     */
+    private AtomicLong _cancelled = new AtomicLong();
+
+    /**
+     * Bytes received for each category, before decoding them.
+     */
+    private ConcurrentHashMap<String, LongAdder> _wireBytes = new ConcurrentHashMap<>();
+
+    /**
+     * Bytes fetched into memory.
+     */
+    private LongAdder _fetchedBytes = new LongAdder();
+
+    /**
+     * Nanoseconds spent reading the bodies of the fetched files.
+     */
+    private LongAdder _fetchTime = new LongAdder();
+
     /**
      * Constructor.
      *
-     * @param host Base host.
-     * @param path Path to save the files.
+     * @param hosts Base host, or equivalent hosts separated by commas.
+     * @param path  Path to save the files.
      */
-    public FileDownloader(String host, File path)
+    public FileDownloader(String hosts, File path)
     {
-        this._host = host;
-        this._path = path;
+        this._mirrors   = new MirrorPool(hosts, Settings.breakerCooldown * 1000L);
+        this._path      = path;
+        this._transport = this._createTransport(Settings.transport);
+        this._state     = new DownloadState(path);
+
+        if(Settings.bytesPerSecond > 0) {
+            this._bytesLimit = new RateLimiter(Settings.bytesPerSecond);
+        }
+        if(Settings.requestsPerSecond > 0) {
+            this._requestsLimit = new RateLimiter(Settings.requestsPerSecond);
+        }
+        if(Settings.adaptive) {
+            this._concurrency = new AdaptiveLimit(1, Settings.virtualThreads ? Settings.connectionsPerHost * this._mirrors.size() : Settings.workers);
+        }
+        if(Settings.hedge) {
+            this._hedging = Executors.newVirtualThreadPerTaskExecutor();
+        }
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            this._state.truncateWriting();
+            this._state.save(); // Killed or crashed runs keep what they learned.
+        }));
     }
 
     /**
-     * Downloads a file.
+     * Creates the transport.
      *
-     * @param path Path on remote host to file.
+     * @param name Transport name.
      *
-     * @return Downloaded bytes.
+     * @return Transport for `name`, `URLConnectionTransport` if it's unknown.
      */
-    public long download(String path)
+    private Transport _createTransport(String name)
     {
-        try {
-            URL    url = new URL("http://" + this._host + path);
-            String p   = Main.getPath(this._path, path);
+        int connectTimeout = Settings.connectTimeout * 1000;
+        int idleTimeout    = Settings.idleTimeout * 1000;
 
-            Console.debug("Downloading "+ url +"...");
-            return this.download(url, p);
-        } catch(Exception e) {
-            Console.println("Couldn't download "+ path +"!");
-            Console.println(e.getMessage());
+        switch(name)
+        {
+            case "httpclient":
+                return new HttpClientTransport(connectTimeout);
 
-            if(Settings.debug) {
-                e.printStackTrace();
-            }
+            case "pipelining":
+                return new PipeliningTransport(
+                        Settings.pipelineConnections,
+                        Settings.pipelineDepth,
+                        connectTimeout,
+                        idleTimeout,
+                        this._resolver
+                );
+
+            case "urlconnection":
+                return new URLConnectionTransport(connectTimeout, idleTimeout);
+
+            default:
+                Console.println("Unknown transport '"+ name +"', using urlconnection instead.");
+
+                return new URLConnectionTransport(connectTimeout, idleTimeout);
         }
+    }
 
-        return 0;
+    /**
+     * Closes the transport and saves the downloader state.
+     *
+     * The state isn't saved when only planning the downloads.
+     */
+    public void close()
+    {
+        if(this._hedging != null) {
+            this._hedging.shutdownNow();
+        }
+        this._watchdog.close();
+        this._transport.close();
+        this._state.save();
     }
 
     /**
-     * Downloads various files.
+     * Sets the deadline of the downloads.
      *
-     * @param files Files to download from remote host.
+     * Once it passes, responses being read are aborted and the
+     * files that haven't started yet are skipped.
      *
-     * @return Downloaded bytes.
+     * @param millis Milliseconds from now.
      */
-    public long download(String[] files)
+    public void setDeadline(long millis)
     {
-        long bytes = 0;
+        this._watchdog.setDeadline(millis);
+    }
 
-        for(String path : files) {
-            bytes += this.download(path);
-        }
+    /**
+     * Returns whether the deadline has passed or not.
+     *
+     * @return `true` if the deadline has passed, `false` if it hasn't or there's none.
+     */
+    public boolean isExpired()
+    {
+        return this._watchdog.isExpired();
+    }
 
-        return bytes;
+    /**
+     * Returns the amount of downloads cancelled by the deadline.
+     *
+     * @return Amount of downloads cancelled by the deadline.
+     */
+    public long getCancelled()
+    {
+        return this._cancelled.get();
     }
 
     /**
-     * Downloads various files.
+     * Sets the version of a file.
      *
-     * @param files Files to download from remote host.
+     * Files whose version is the same they had when they were downloaded
+     * are skipped, even when overwriting or revalidating.
      *
-     * @return Downloaded bytes.
+     * @param path    Path on remote host to file.
+     * @param version File version, from its manifest.
      */
-    public long download(ArrayList<String> files)
+    public void setVersion(String path, String version)
+    {
+        this._state.setVersion(path, version);
+    }
+
+    /**
+     * Returns the amount of files skipped because their version didn't change.
+     *
+     * @return Amount of unchanged files.
+     */
+    public long getUnchanged()
+    {
+        return this._unchanged.get();
+    }
+
+    /**
+     * Returns the known size of a file.
+     *
+     * Uses the size it had when it was last downloaded or the size of the
+     * local copy, the server isn't asked (see `probe`).
+     *
+     * @param path Path on remote host to file.
+     *
+     * @return Known size of the file, `-1` if it's unknown.
+     */
+    public long getKnownSize(String path)
     {
-        long bytes = 0;
+        long size = this._state.getSize(path);
+        if(size >= 0) {
+            return size;
+        }
 
-        for(String path : files) {
-            bytes += this.download(path);
+        File file = new File(Main.getPath(this._path, path));
+        if(file.exists()) {
+            return file.length();
         }
 
-        return bytes;
+        return -1;
     }
 
     /**
-     * Actually performs the download.
+     * Asks the server for the size of a file.
      *
-     * *cough* copy-paste *cough*.
-     *
-     * @param url      URL to download.
-     * @param savePath Path to save the file.
+     * Sends a HEAD request, the file isn't downloaded.
      *
-     * @return Downloaded bytes.
+     * @param path Path on remote host to file.
      *
-     * @link http://stackoverflow.com/a/14413945 SO is bae.
+     * @return `Content-Length` of the file, `-1` if it's unknown or the request failed.
      */
-    public long download(URL url, String savePath) throws IOException
+    public long probe(String path)
     {
-        InputStream      is    = null;
-        FileOutputStream fos   = null;
-        long             bytes = 0;
-        File             p     = new File(savePath);
+        String  host   = this._mirrors.acquire(Collections.emptySet());
+        boolean failed = false;
 
-        if(
-            !p.getParentFile().exists() &&
-            !p.getParentFile().mkdirs()
-        ) {
-            Console.println("Couldn't make subdirectories for '"+ savePath +"'!");
-            Console.println("Make sure write permissions are enabled!");
+        try {
+            URL     url     = this._toUrl(host, path);
+            Request request = new Request("HEAD", url);
 
-            return bytes;
+            request.setTimeout(this._watchdog.getTimeout(Settings.firstByteTimeout * 1000L));
+            this.throttleRequests(url.getHost());
+
+            try(Response r = this._sendThroughProxy(request, "probes")) {
+                if(r.getStatus() != 200) {
+                    return -1;
+                }
+
+                return r.getContentLength();
+            }
+        } catch(IOException e) {
+            failed = FileDownloader.isCongestion(e);
+            Console.debug("Couldn't probe "+ path +": "+ e.getMessage());
+        } finally {
+            this._mirrors.release(host, failed);
         }
 
-        if(
-            p.exists()          &&
-            !Settings.overwrite
-        ) {
-            Console.debug("Skipping already downloaded file '"+ savePath +"'");
+        return -1;
+    }
 
-            return bytes;
+    /**
+     * Warms up the connections to the mirrors.
+     *
+     * Resolves each mirror and sends `connections` HEAD requests to it at
+     * the same time, so the transport keeps their connections open for the
+     * first downloads. Their latency is also the first one of each mirror.
+     *
+     * Mirrors that fail aren't reported, the downloads will retry them.
+     *
+     * @param connections Connections to open to each mirror.
+     */
+    public void warmUp(int connections)
+    {
+        long start = System.currentTimeMillis();
+
+        try(ExecutorService mirrors = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(String host : this._mirrors.getHosts()) {
+                mirrors.execute(() -> this._warmUp(host, connections));
+            }
         }
 
+        Console.debug("Warmed up "+ this._mirrors.size() +" hosts in "+ (System.currentTimeMillis() - start) +" ms");
+    }
+
+    /**
+     * Warms up the connections to a mirror.
+     *
+     * The host isn't resolved when the requests go through a proxy.
+     *
+     * @param host        Host of the mirror.
+     * @param connections Connections to open.
+     */
+    private void _warmUp(String host, int connections)
+    {
+        URL url;
         try {
-            URLConnection urlConn = url.openConnection();
+            url = this._toUrl(host, "/");
 
-            is  = urlConn.getInputStream();       // Get connection input stream
-            fos = new FileOutputStream(savePath); // Open output stream to local file
+            if(this._proxies.size() == 0) {
+                this._resolver.resolve(url.getHost());
+            }
+        } catch(IOException e) {
+            Console.debug("Couldn't warm up "+ host +": "+ e.getMessage());
 
-            byte[] buffer = new byte[4096]; // Declare 4KB buffer
-            int len;
+            return;
+        }
 
-            // While we have available data, continue downloading and storing to local file
-            while((len = is.read(buffer)) > 0) {
-                fos.write(buffer, 0, len);
-                bytes += len;
-            }
-        } finally {
-            try {
-                if(is != null) {
-                    is.close();
-                }
-            } finally {
-                if(fos != null) {
-                    fos.close();
-                }
+        try(ExecutorService requests = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(int i = 0; i < connections; i++) {
+                requests.execute(() -> this._openConnection(url));
             }
         }
+    }
 
-        return bytes;
+    /**
+     * Opens a connection to a host.
+     *
+     * @param url URL of the host.
+     */
+    private void _openConnection(URL url)
+    {
+        Request request = new Request("HEAD", url);
+
+        request.setTimeout(this._watchdog.getTimeout(Settings.connectTimeout * 1000L));
+        try {
+            this.throttleRequests(url.getHost());
+
+            // Only the connection is needed.
+            this._sendThroughProxy(request, "warm-up").close();
+        } catch(IOException e) {
+            Console.debug("Couldn't open a connection to "+ url.getAuthority() +": "+ e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the bytes received for a category.
+     *
+     * Compressed responses count their size before decoding them, the
+     * rest count the same bytes they stored.
+     *
+     * @param category Category name.
+     *
+     * @return Bytes received for the category.
+     */
+    public long getWireBytes(String category)
+    {
+        LongAdder bytes = this._wireBytes.get(category);
+
+        return (bytes == null) ? 0 : bytes.sum();
+    }
+
+    /**
+     * Returns the mirrors of the base host.
+     *
+     * @return Mirrors of the base host.
+     */
+    public MirrorPool getMirrors()
+    {
+        return this._mirrors;
+    }
+
+    /**
+     * Returns the proxies the requests are sent through.
+     *
+     * @return Proxies the requests are sent through.
+     */
+    public ProxyPool getProxies()
+    {
+        return this._proxies;
+    }
+
+    /**
+     * Returns the watchdog of the responses.
+     *
+     * @return Watchdog that aborts idle responses and enforces the deadline.
+     */
+    Watchdog getWatchdog()
+    {
+        return this._watchdog;
+    }
+
+    /**
+     * Returns the pool of buffers used to copy the downloaded bytes.
+     *
+     * @return Pool of buffers used to copy the downloaded bytes.
+     */
+    public BufferPool getBufferPool()
+    {
+        return this._buffers;
+    }
+
+    /**
+     * Returns the adaptive limit of requests in flight.
+     *
+     * @return Adaptive limit of requests in flight, `null` if it's disabled.
+     */
+    public AdaptiveLimit getConcurrency()
+    {
+        return this._concurrency;
+    }
+
+    /**
+     * Returns hedging stats.
+     *
+     * @return Hedging stats, empty if hedging is disabled.
+     */
+    public String getHedgeStats()
+    {
+        if(!Settings.hedge) {
+            return "";
+        }
+
+        return "Hedged requests: "+ this._hedgesSent.get() +" sent, "+ this._hedgesWon.get() +" won";
+    }
+
+    /**
+     * Returns retry stats.
+     *
+     * @return Retry stats, empty if nothing was retried or rejected.
+     */
+    public String getRetryStats()
+    {
+        if(
+            this._retries.get()  == 0 &&
+            this._rejected.get() == 0
+        ) {
+            return "";
+        }
+
+        return "Retries: "+ this._retries.get() +", failed fast by circuit breakers: "+ this._rejected.get();
+    }
+
+    /**
+     * Downloads a file.
+     *
+     * @param path Path on remote host to file.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(String path)
+    {
+        return this.download(path, "");
+    }
+
+    /**
+     * Downloads a file.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(String path, String category)
+    {
+        try {
+            String p = Main.getPath(this._path, path);
+
+            if(!this._downloading.add(p)) {
+                // Two categories can list the same file.
+                Console.debug("Skipping '"+ p +"', it's already being downloaded");
+
+                return 0;
+            }
+
+            try {
+                return this._downloadWithRetries(path, p, category);
+            } finally {
+                this._downloading.remove(p);
+            }
+        } catch(DeadlineExceededException e) {
+            this._cancelled.incrementAndGet();
+            Console.debug(e.getMessage());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch(Exception e) {
+            Console.println("Couldn't download "+ path +"!");
+            Console.println(e.getMessage());
+
+            if(Settings.debug) {
+                e.printStackTrace();
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Downloads a file, retrying transient errors.
+     *
+     * Each attempt goes to one of the mirrors and through its circuit
+     * breaker. Retries go to the mirrors that haven't failed yet, so a
+     * failing mirror is skipped right away when there are others.
+     *
+     * @param path     Path on remote host to file.
+     * @param savePath Path to save the file.
+     * @param category Category the file belongs to.
+     *
+     * @return Downloaded bytes.
+     *
+     * @throws IOException          If the last attempt failed.
+     * @throws InterruptedException If the thread is interrupted.
+     */
+    private long _downloadWithRetries(String path, String savePath, String category) throws IOException, InterruptedException
+    {
+        HashSet<String> failed = new HashSet<>();
+
+        for(int attempt = 1; ; attempt++) {
+            String         host        = this._mirrors.acquire(failed);
+            URL            url         = this._toUrl(host, path);
+            CircuitBreaker breaker     = this._getBreaker(url.getHost());
+            Semaphore      connections = this.getConnections(url.getHost());
+            boolean        error       = false;
+
+            try {
+                try {
+                    breaker.acquire();
+                } catch(CircuitOpenException e) {
+                    this._rejected.incrementAndGet();
+
+                    failed.add(host);
+                    if(failed.size() < this._mirrors.size()) {
+                        continue;
+                    }
+
+                    throw e;
+                }
+
+                Console.debug("Downloading "+ url +"...");
+
+                boolean reported = false;
+                try {
+                    connections.acquire();
+                    try {
+                        long bytes = this.download(url, savePath, category);
+                        breaker.success();
+                        reported = true;
+
+                        return bytes;
+                    } catch(IOException e) {
+                        if(FileDownloader.isCongestion(e)) {
+                            breaker.failure();
+                            error = true;
+                        } else {
+                            breaker.success(); // The host answered, the file is the problem.
+                        }
+                        reported = true;
+
+                        if(!this._retry.shouldRetry(e, attempt)) {
+                            throw e;
+                        }
+
+                        failed.add(host);
+                        this._retries.incrementAndGet();
+                        Console.debug("Retrying "+ url +" ("+ e.getMessage() +")");
+                    } finally {
+                        connections.release();
+                    }
+                } finally {
+                    if(!reported) {
+                        breaker.cancel(); // Interrupted or crashed, don't keep the trial forever.
+                    }
+                }
+            } finally {
+                this._mirrors.release(host, error);
+            }
+
+            if(failed.size() >= this._mirrors.size()) {
+                // No mirror left to fail over to, back off.
+                Thread.sleep(this._watchdog.getTimeout(this._retry.getDelay(attempt)));
+            }
+        }
+    }
+
+    /**
+     * Fetches a file into memory.
+     *
+     * The file isn't saved. Transient errors are retried like downloads are,
+     * failing over to the other mirrors.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     *
+     * @return File contents, `null` if it couldn't be fetched.
+     */
+    public byte[] fetch(String path, String category)
+    {
+        HashSet<String> failed = new HashSet<>();
+
+        for(int attempt = 1; ; attempt++) {
+            String  host  = this._mirrors.acquire(failed);
+            boolean error = false;
+
+            try {
+                URL       url         = this._toUrl(host, path);
+                Semaphore connections = this.getConnections(url.getHost());
+
+                connections.acquire();
+                try {
+                    return this._fetch(url, category);
+                } finally {
+                    connections.release();
+                }
+            } catch(IOException e) {
+                error = FileDownloader.isCongestion(e);
+
+                if(!this._retry.shouldRetry(e, attempt)) {
+                    Console.debug("Couldn't fetch "+ path +": "+ e.getMessage());
+
+                    return null;
+                }
+
+                failed.add(host);
+                this._retries.incrementAndGet();
+                Console.debug("Retrying "+ path +" ("+ e.getMessage() +")");
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                return null;
+            } finally {
+                this._mirrors.release(host, error);
+            }
+
+            if(failed.size() >= this._mirrors.size()) {
+                try {
+                    Thread.sleep(this._watchdog.getTimeout(this._retry.getDelay(attempt)));
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Fetches a file into memory from a mirror.
+     *
+     * @param url      URL of the file.
+     * @param category Category the file belongs to.
+     *
+     * @return File contents.
+     *
+     * @throws IOException If the file couldn't be fetched.
+     */
+    private byte[] _fetch(URL url, String category) throws IOException
+    {
+        Request request = new Request(url);
+
+        request.setTimeout(this._watchdog.getTimeout(Settings.firstByteTimeout * 1000L));
+        if(this._isCompressible(url)) {
+            request.setHeader("Accept-Encoding", "gzip, deflate");
+        }
+        this.throttleRequests(url.getHost());
+
+        try(Response r = this._sendThroughProxy(request, category)) {
+            if(r.getStatus() != 200) {
+                throw new HttpStatusException(url, r.getStatus());
+            }
+
+            r.decode();
+
+            long   start    = System.nanoTime();
+            byte[] contents = r.getBody().readAllBytes();
+            long   wire     = (r.getWireBytes() < 0) ? contents.length : r.getWireBytes();
+
+            this._fetchedBytes.add(wire);
+            this._fetchTime.add(System.nanoTime() - start);
+            this._wireBytes.computeIfAbsent(category, (c) -> new LongAdder())
+                           .add(wire);
+
+            return contents;
+        }
+    }
+
+    /**
+     * Returns the speed of the fetched files.
+     *
+     * Only the time spent reading the bodies counts, not the latency.
+     *
+     * @return Bytes per second of a single response, `-1` if nothing was fetched.
+     */
+    public long getFetchThroughput()
+    {
+        long nanos = this._fetchTime.sum();
+        if(nanos <= 0) {
+            return -1;
+        }
+
+        return (long)(this._fetchedBytes.sum() / (nanos / 1e9));
+    }
+
+    /**
+     * Downloads various files.
+     *
+     * @param files Files to download from remote host.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(String[] files)
+    {
+        return this.download(files, "");
+    }
+
+    /**
+     * Downloads various files.
+     *
+     * @param files    Files to download from remote host.
+     * @param category Category the files belong to.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(String[] files, String category)
+    {
+        return this.download(new ArrayList<>(Arrays.asList(files)), category);
+    }
+
+    /**
+     * Downloads various files.
+     *
+     * @param files Files to download from remote host.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(ArrayList<String> files)
+    {
+        return this.download(files, "");
+    }
+
+    /**
+     * Downloads various files.
+     *
+     * @param files    Files to download from remote host.
+     * @param category Category the files belong to.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(ArrayList<String> files, String category)
+    {
+        return this.download(files.iterator(), category);
+    }
+
+    /**
+     * Downloads various files.
+     *
+     * Files are downloaded as `files` returns them, so it can still be
+     * producing them (i.e. parsing a manifest) while the first ones download.
+     *
+     * @param files    Files to download from remote host.
+     * @param category Category the files belong to.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(Iterator<String> files, String category)
+    {
+        WorkQueue queue = new WorkQueue(this);
+
+        try {
+            return queue.submit(files, category).await();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            queue.close();
+        }
+
+        return 0;
+    }
+
+    /**
+     * Actually performs the download.
+     *
+     * @param url      URL to download.
+     * @param savePath Path to save the file.
+     *
+     * @return Downloaded bytes.
+     */
+    public long download(URL url, String savePath) throws IOException
+    {
+        return this.download(url, savePath, "");
+    }
+
+    /**
+     * Actually performs the download.
+     *
+     * *cough* copy-paste *cough*.
+     *
+     * The file is written to `savePath.part` and renamed once it's complete,
+     * so an interrupted download never leaves a truncated file behind. If a
+     * `.part` file with a stored validator is found it's resumed with a `Range`
+     * and `If-Range` request, or started again if the host doesn't support it
+     * or the file changed.
+     *
+     * @param url      URL to download.
+     * @param savePath Path to save the file.
+     * @param category Category the file belongs to.
+     *
+     * @return Downloaded bytes.
+     *
+     * @link http://stackoverflow.com/a/14413945 SO is bae.
+     */
+    public long download(URL url, String savePath, String category) throws IOException
+    {
+        Response         r      = null;
+        RandomAccessFile raf    = null;
+        long             bytes  = 0;
+        File             p      = new File(savePath);
+        PartFile         part   = new PartFile(savePath);
+        long             offset = part.getOffset();
+
+        if(
+            !p.getParentFile().mkdirs() &&
+            !p.getParentFile().isDirectory() // Another worker could have created it.
+        ) {
+            Console.println("Couldn't make subdirectories for '"+ savePath +"'!");
+            Console.println("Make sure write permissions are enabled!");
+
+            return bytes;
+        }
+
+        if(
+            p.exists()           &&
+            !Settings.overwrite  &&
+            !Settings.revalidate
+        ) {
+            Console.debug("Skipping already downloaded file '"+ savePath +"'");
+
+            return bytes;
+        }
+
+        String key     = DownloadState.getKey(url);
+        String version = this._state.getVersion(key);
+        if(
+            p.exists() &&
+            this._state.isDownloaded(key, version)
+        ) {
+            Console.debug("Skipping unchanged file '"+ savePath +"'");
+            this._unchanged.incrementAndGet();
+
+            return bytes;
+        }
+
+        if(this._watchdog.isExpired()) {
+            throw new DeadlineExceededException(url.toString());
+        }
+
+        Request request = new Request(url);
+        request.setTimeout(this._watchdog.getTimeout(Settings.firstByteTimeout * 1000L));
+        if(offset > 0) {
+            request.setRange(offset, -1, part.getValidator());
+        } else if(
+            p.exists()          &&
+            !Settings.overwrite
+        ) {
+            this._state.setValidators(request, p);
+        }
+
+        if(
+            offset == 0 &&
+            this._isCompressible(url)
+        ) {
+            request.setHeader("Accept-Encoding", "gzip, deflate");
+        }
+
+        long                  start     = System.nanoTime();
+        long                  latency   = 0;
+        boolean               congested = false;
+        RangeIgnoredException ignored   = null;
+
+        if(this._concurrency != null) {
+            this._concurrency.acquire();
+        }
+
+        try {
+            this.throttleRequests(url.getHost());
+
+            r       = this._sendThroughProxy(request, category);
+            latency = System.nanoTime() - start;
+
+            if(r.getStatus() == 304) {
+                Console.debug("Skipping not modified file '"+ savePath +"'");
+                this._state.notModified(key, version);
+
+                return bytes;
+            }
+
+            if(r.getStatus() == 416) {
+                // The partial file doesn't match the remote one anymore.
+                Console.debug("Couldn't resume '"+ savePath +"', starting again");
+            } else if(r.getStatus() == 206) {
+                if(r.getRangeStart() != offset) {
+                    throw new IOException("Server sent the wrong range for "+ url);
+                }
+
+                Console.debug("Resuming '"+ savePath +"' from byte "+ offset);
+            } else if(r.getStatus() == 200) {
+                offset = 0;
+            } else {
+                throw new HttpStatusException(url, r.getStatus());
+            }
+
+            if(r.getStatus() != 416) {
+                r.decode();
+
+                raf   = part.open(r.getRangeValidator(), offset);
+                bytes = this._isSegmentable(r, url) ? this._writeSegmented(r, raf, part, url, request.getProxy(), category) : this._write(r, raf, part, offset, url);
+
+                this._wireBytes.computeIfAbsent(category, (c) -> new LongAdder())
+                               .add((r.getWireBytes() < 0) ? bytes : r.getWireBytes());
+            }
+        } catch(RangeIgnoredException e) {
+            ignored = e;
+        } catch(IOException e) {
+            congested = FileDownloader.isCongestion(e);
+
+            throw e;
+        } finally {
+            if(this._concurrency != null) {
+                this._concurrency.release(latency, bytes, congested);
+            }
+
+            try {
+                if(r != null) {
+                    r.close();
+                }
+            } finally {
+                part.close();
+            }
+        }
+
+        if(ignored != null) {
+            if(ignored.isChanged()) {
+                Console.debug("'"+ savePath +"' changed while downloading its segments, starting again");
+            } else {
+                Console.debug("Server ignored the ranges of "+ url.getHost() +", not segmenting its files anymore");
+                this._unsegmentable.add(url.getHost());
+            }
+
+            return this.download(url, savePath, category);
+        }
+
+        if(r.getStatus() == 416) {
+            part.delete();
+
+            return this.download(url, savePath, category);
+        }
+
+        part.complete(p);
+
+        this._state.downloaded(key, version, r, p);
+
+        return bytes;
+    }
+
+    /**
+     * Sends a request through one of the proxies.
+     *
+     * The proxy is released once the response is closed.
+     *
+     * @param request  Request to send.
+     * @param category Category of the requested file.
+     *
+     * @return Server response.
+     *
+     * @throws IOException If the request couldn't be sent.
+     */
+    private Response _sendThroughProxy(Request request, String category) throws IOException
+    {
+        Proxy proxy;
+        try {
+            proxy = this._proxies.acquire();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while waiting for a proxy for "+ request.getUrl());
+        }
+
+        request.setProxy(proxy);
+        try {
+            Response r = this.send(request, category);
+            r.addOnClose(() -> this._proxies.release(proxy, false));
+
+            return r;
+        } catch(IOException e) {
+            this._proxies.release(proxy, FileDownloader.isCongestion(e));
+
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a request.
+     *
+     * With hedging enabled, if the response doesn't arrive before most of
+     * the responses of its category did, a duplicate request is sent (see
+     * `HedgedRequest`).
+     *
+     * @param request  Request to send.
+     * @param category Category of the requested file.
+     *
+     * @return Server response.
+     *
+     * @throws IOException If the request couldn't be sent.
+     */
+    Response send(Request request, String category) throws IOException
+    {
+        LatencyTracker latencies = this._latencies.computeIfAbsent(category, (c) -> new LatencyTracker());
+        long           start     = System.nanoTime();
+        long           threshold = latencies.getPercentile(Settings.hedgePercentile);
+
+        if(
+            !Settings.hedge ||
+            threshold < 0
+        ) {
+            Response r = this._transport.send(request);
+            this._recordLatency(latencies, request, System.nanoTime() - start);
+
+            return r;
+        }
+
+        HedgedRequest hedged = new HedgedRequest(this, this._transport, this._hedging, request);
+        try {
+            Response r = hedged.send(threshold);
+            this._recordLatency(latencies, request, System.nanoTime() - start);
+
+            if(hedged.isHedge(r)) {
+                this._hedgesWon.incrementAndGet();
+            }
+
+            return r;
+        } finally {
+            if(hedged.isHedged()) {
+                this._hedgesSent.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Records the time a response took to arrive.
+     *
+     * @param latencies Latencies of the category.
+     * @param request   Sent request.
+     * @param nanos     Nanoseconds until the response arrived.
+     */
+    private void _recordLatency(LatencyTracker latencies, Request request, long nanos)
+    {
+        latencies.record(nanos);
+        this._mirrors.latency(request.getUrl().getAuthority(), nanos);
+    }
+
+    /**
+     * Returns the error of a failed request.
+     *
+     * @param e Execution error.
+     *
+     * @return The `IOException` that made the request fail.
+     */
+    static IOException unwrap(ExecutionException e)
+    {
+        if(e.getCause() instanceof IOException) {
+            return (IOException)e.getCause();
+        }
+
+        return new IOException(e.getCause());
+    }
+
+    /**
+     * Writes the body of a response to a file.
+     *
+     * The file is preallocated to its final size when `Content-Length` is known
+     * and the body is copied through a pooled direct buffer sized after it. If
+     * the copy fails the file is truncated back to the written bytes so it can
+     * be resumed. The written bytes are also stored while it's copied, so a
+     * killed run doesn't resume the preallocated zeros.
+     *
+     * The response is watched while it's read, so it's aborted if it stops
+     * sending bytes or the deadline passes.
+     *
+     * @param r      Server response.
+     * @param raf    File to write to.
+     * @param part   Partial file being written.
+     * @param offset Position of the first byte of the body in the file.
+     * @param url    Requested URL.
+     *
+     * @return Written bytes.
+     *
+     * @throws IOException If the body couldn't be read or written.
+     */
+    private long _write(Response r, RandomAccessFile raf, PartFile part, long offset, URL url) throws IOException
+    {
+        FileChannel         file     = raf.getChannel();
+        ReadableByteChannel body     = r.getChannel();
+        AtomicLong          position = new AtomicLong(offset);
+        long                length   = r.getContentLength();
+        boolean             complete = false;
+        ByteBuffer          buffer   = this._buffers.borrow((length < 0) ? FileDownloader.DEFAULT_BUFFER_SIZE : length);
+
+        raf.setLength((length < 0) ? offset : offset + length);
+
+        this._state.startWriting(part, position);
+        AtomicLong progress = this._watchdog.watch(r);
+        try {
+            boolean eof = false;
+            while(!eof) {
+                int n = body.read(buffer);
+
+                eof = (n < 0);
+                if(n > 0) {
+                    progress.set(System.nanoTime());
+                    this.throttleBytes(url.getHost(), n);
+                }
+
+                if(
+                    eof ||
+                    !buffer.hasRemaining()
+                ) {
+                    buffer.flip();
+                    while(buffer.hasRemaining()) {
+                        position.addAndGet(file.write(buffer, position.get()));
+                    }
+                    buffer.clear();
+
+                    part.written(position.get());
+                }
+            }
+
+            if(
+                length >= 0 &&
+                position.get() != offset + length
+            ) {
+                throw new EOFException("Connection closed after "+ (position.get() - offset) +" of "+ length +" bytes");
+            }
+
+            complete = true;
+        } catch(IOException e) {
+            throw this._watchdog.getError(r, e, url.toString());
+        } finally {
+            this._watchdog.unwatch(r);
+            this._state.stopWriting(part);
+            this._buffers.release(buffer);
+
+            if(!complete) {
+                part.truncate(position.get());
+            }
+        }
+
+        return position.get() - offset;
+    }
+
+    /**
+     * Checks whether a file should be requested compressed or not.
+     *
+     * Only text files are, the rest are usually compressed already.
+     *
+     * @param url URL of the file.
+     *
+     * @return `true` if compression is enabled and the file is a text file, `false` if not.
+     */
+    private boolean _isCompressible(URL url)
+    {
+        if(!Settings.compression) {
+            return false;
+        }
+
+        String path = url.getPath().toLowerCase();
+        for(String extension : FileDownloader.TEXT_EXTENSIONS) {
+            if(path.endsWith(extension)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks whether a response can be downloaded in segments or not.
+     *
+     * It must be a complete response of at least `segmentThreshold` bytes
+     * from a host that accepts ranges, with a validator so all segments
+     * are sure to belong to the same file.
+     *
+     * @param r   Server response.
+     * @param url Downloaded URL.
+     *
+     * @return `true` if the rest of the file can be requested in ranges, `false` if not.
+     */
+    private boolean _isSegmentable(Response r, URL url)
+    {
+        return (
+            Settings.segments > 1                                  &&
+            r.getStatus() == 200                                   &&
+            r.getContentLength() >= Settings.segmentThreshold      &&
+            "bytes".equalsIgnoreCase(r.getHeader("Accept-Ranges")) &&
+            r.getRangeValidator() != null                          &&
+            !this._unsegmentable.contains(url.getHost())
+        );
+    }
+
+    /**
+     * Writes a response in segments.
+     *
+     * The file is preallocated and split in up to `segments` ranges (see
+     * `SegmentedDownload`). Extra segments only use the free connections
+     * to the host, if there are none the file is written as usual.
+     *
+     * If any segment fails the file is emptied, so the next attempt starts
+     * again.
+     *
+     * @param r        Server response.
+     * @param raf      File to write.
+     * @param part     Partial file being written.
+     * @param url      Downloaded URL.
+     * @param proxy    Proxy the file is downloaded through.
+     * @param category Category of the file.
+     *
+     * @return Written bytes.
+     *
+     * @throws RangeIgnoredException If the host sent the whole file to a segment,
+     *                               or the file changed.
+     * @throws IOException           If any segment couldn't be downloaded.
+     */
+    private long _writeSegmented(Response r, RandomAccessFile raf, PartFile part, URL url, Proxy proxy, String category) throws IOException
+    {
+        Semaphore connections = this.getConnections(url.getHost());
+        int       count       = 1;
+        boolean   complete    = false;
+
+        while(
+            count < Settings.segments &&
+            connections.tryAcquire()
+        ) {
+            count++;
+        }
+
+        if(count == 1) {
+            return this._write(r, raf, part, 0, url);
+        }
+
+        this._state.startWriting(part, new AtomicLong(0)); // Holes can't be resumed.
+        try {
+            raf.setLength(r.getContentLength());
+
+            long bytes = new SegmentedDownload(this, url, proxy, r.getRangeValidator(), category).write(r, raf.getChannel(), count);
+            complete   = true;
+
+            return bytes;
+        } finally {
+            connections.release(count - 1);
+            this._state.stopWriting(part);
+
+            if(!complete) {
+                part.truncate(0);
+            }
+        }
+    }
+
+    /**
+     * Returns the circuit breaker of a host.
+     *
+     * @param host Host name.
+     *
+     * @return Circuit breaker of the host.
+     */
+    private CircuitBreaker _getBreaker(String host)
+    {
+        return this._breakers.computeIfAbsent(
+                host,
+                (h) -> new CircuitBreaker(h, Settings.breakerThreshold, Settings.breakerCooldown * 1000L)
+        );
+    }
+
+    /**
+     * Returns the connections to a host.
+     *
+     * @param host Host name.
+     *
+     * @return Semaphore with the free connections to the host.
+     */
+    Semaphore getConnections(String host)
+    {
+        return this._connections.computeIfAbsent(host, (h) -> new Semaphore(Settings.connectionsPerHost));
+    }
+
+    /**
+     * Checks whether an error means the host is overloaded or not.
+     *
+     * @param e Download error.
+     *
+     * @return `true` for 5xx and 429 answers and network errors, `false` for
+     *         other answers (like 404) that don't depend on the load, local and
+     *         protocol errors, interruptions and open circuits.
+     */
+    static boolean isCongestion(IOException e)
+    {
+        if(e instanceof HttpStatusException) {
+            int status = ((HttpStatusException)e).getStatus();
+
+            return status == 429 || status >= 500;
+        }
+
+        return RetryPolicy.isNetworkError(e);
+    }
+
+    /**
+     * Waits until the rate limits allow sending a request.
+     *
+     * @param host Host the request is sent to.
+     *
+     * @throws IOException If the thread is interrupted while waiting or the deadline passes.
+     */
+    void throttleRequests(String host) throws IOException
+    {
+        this._throttle(this._requestsLimit, this._hostRequestsLimits, Settings.hostRequestsPerSecond, host, 1);
+    }
+
+    /**
+     * Waits until the rate limits allow receiving more bytes.
+     *
+     * @param host  Host the bytes are received from.
+     * @param bytes Received bytes.
+     *
+     * @throws IOException If the thread is interrupted while waiting or the deadline passes.
+     */
+    void throttleBytes(String host, long bytes) throws IOException
+    {
+        this._throttle(this._bytesLimit, this._hostBytesLimits, Settings.hostBytesPerSecond, host, bytes);
+    }
+
+    /**
+     * Waits until the rate limits allow taking more permits.
+     *
+     * @param global   Limit for all hosts, `null` if there's no limit.
+     * @param hosts    Limits of each host.
+     * @param hostRate Permits per second for each host, `0` if there's no limit.
+     * @param host     Host to take the permits from.
+     * @param permits  Amount of permits to take.
+     *
+     * @throws IOException If the thread is interrupted while waiting or the deadline passes.
+     */
+    private void _throttle(
+            RateLimiter global,
+            ConcurrentHashMap<String, RateLimiter> hosts,
+            long hostRate,
+            String host,
+            long permits
+    ) throws IOException {
+        long deadline = this._watchdog.getDeadline();
+
+        if(
+            global != null &&
+            !global.acquire(permits, deadline)
+        ) {
+            throw new DeadlineExceededException("throttled request to "+ host);
+        }
+
+        if(
+            hostRate > 0 &&
+            !hosts.computeIfAbsent(host, (h) -> new RateLimiter(hostRate)).acquire(permits, deadline)
+        ) {
+            throw new DeadlineExceededException("throttled request to "+ host);
+        }
+    }
+
+    /**
+     * Builds the URL of a file.
+     *
+     * Characters that aren't allowed in a URL are escaped, non-ASCII
+     * ones included.
+     *
+     * @param host Host, with its port if any.
+     * @param path Path on remote host to file.
+     *
+     * @return URL of the file.
+     *
+     * @throws MalformedURLException If the host or path are invalid.
+     */
+    private URL _toUrl(String host, String path) throws MalformedURLException
+    {
+        try {
+            return URI.create(new URI("http", host, path, null, null).toASCIIString()).toURL();
+        } catch(URISyntaxException | IllegalArgumentException e) {
+            throw new MalformedURLException("Invalid URL http://"+ host + path +": "+ e.getMessage());
+        }
     }
 }
@@ -0,0 +1,298 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Proxy;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import com.manulaiko.dord.launcher.downloader.transport.Request;
+import com.manulaiko.dord.launcher.downloader.transport.Response;
+import com.manulaiko.dord.launcher.downloader.transport.Transport;
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Hedged request.
+ *
+ * Sends a request and, if its response doesn't arrive in time, a
+ * duplicate of it. Whichever response arrives first is used, the other
+ * one is aborted as soon as it arrives, so its body isn't downloaded.
+ *
+ * The duplicate takes its own connection to the host, concurrency slot
+ * and proxy, it's only sent if they're free.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class HedgedRequest
+{
+    /**
+     * Downloader the request belongs to.
+     */
+    private FileDownloader _downloader;
+
+    /**
+     * Transport used to send the requests.
+     */
+    private Transport _transport;
+
+    /**
+     * Executor that sends the requests.
+     */
+    private ExecutorService _executor;
+
+    /**
+     * Request to send.
+     */
+    private Request _request;
+
+    /**
+     * Future completed with the first response.
+     */
+    private CompletableFuture<Response> _winner = new CompletableFuture<>();
+
+    /**
+     * Requests sent for `_winner` that haven't finished yet.
+     */
+    private AtomicInteger _pending = new AtomicInteger();
+
+    /**
+     * Future completed with the hedge's response, `null` if it wasn't sent.
+     */
+    private CompletableFuture<Response> _hedge;
+
+    /**
+     * Constructor.
+     *
+     * @param downloader Downloader the request belongs to.
+     * @param transport  Transport used to send the requests.
+     * @param executor   Executor that sends the requests.
+     * @param request    Request to send.
+     */
+    public HedgedRequest(FileDownloader downloader, Transport transport, ExecutorService executor, Request request)
+    {
+        this._downloader = downloader;
+        this._transport  = transport;
+        this._executor   = executor;
+        this._request    = request;
+    }
+
+    /**
+     * Sends the request.
+     *
+     * The hedge is sent if the response doesn't arrive in `threshold`
+     * nanoseconds.
+     *
+     * @param threshold Nanoseconds to wait before sending the hedge.
+     *
+     * @return First response.
+     *
+     * @throws IOException If every request sent failed.
+     */
+    public Response send(long threshold) throws IOException
+    {
+        CompletableFuture<Response> primary = this._sendAsync(this._request, null);
+        try {
+            return primary.get(threshold, TimeUnit.NANOSECONDS);
+        } catch(TimeoutException e) {
+            // Straggler, send the hedge.
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw this._abandon(new InterruptedIOException("Interrupted while waiting for "+ this._request.getUrl()));
+        } catch(ExecutionException e) {
+            throw FileDownloader.unwrap(e);
+        }
+
+        try {
+            this._hedge = this._sendHedge();
+
+            return this._winner.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw this._abandon(new InterruptedIOException("Interrupted while waiting for "+ this._request.getUrl()));
+        } catch(ExecutionException e) {
+            throw this._abandon(FileDownloader.unwrap(e));
+        } catch(IOException e) {
+            throw this._abandon(e);
+        }
+    }
+
+    /**
+     * Returns whether the hedge was sent or not.
+     *
+     * @return `true` if the hedge was sent, `false` if not.
+     */
+    public boolean isHedged()
+    {
+        return this._hedge != null;
+    }
+
+    /**
+     * Returns whether a response is the hedge's one or not.
+     *
+     * @param r Response returned by `send`.
+     *
+     * @return `true` if the hedge answered first, `false` if not.
+     */
+    public boolean isHedge(Response r)
+    {
+        return (
+            this._hedge != null                     &&
+            this._hedge.isDone()                    &&
+            !this._hedge.isCompletedExceptionally() &&
+            this._hedge.join() == r
+        );
+    }
+
+    /**
+     * Gives up on the responses of the request.
+     *
+     * `_winner` is failed so responses arriving later are aborted, and
+     * the one that already arrived, if any, is aborted too. Aborting
+     * a response releases its connection, concurrency slot and proxy.
+     *
+     * @param e Error the request failed with.
+     *
+     * @return `e`, to be thrown.
+     */
+    private IOException _abandon(IOException e)
+    {
+        if(
+            !this._winner.completeExceptionally(e) &&
+            !this._winner.isCompletedExceptionally()
+        ) {
+            this._winner.join().abort();
+        }
+
+        return e;
+    }
+
+    /**
+     * Sends the hedge.
+     *
+     * Takes a free connection to the host, a free concurrency slot and a
+     * free proxy, like the request itself did. They're released once the
+     * hedge's response is closed or aborted.
+     *
+     * @return Future completed with the hedge's response, `null` if it wasn't sent.
+     *
+     * @throws IOException If the thread is interrupted while throttled.
+     */
+    private CompletableFuture<Response> _sendHedge() throws IOException
+    {
+        String        host        = this._request.getUrl().getHost();
+        Semaphore     connections = this._downloader.getConnections(host);
+        AdaptiveLimit concurrency = this._downloader.getConcurrency();
+
+        if(!connections.tryAcquire()) {
+            return null;
+        }
+
+        if(
+            concurrency != null &&
+            !concurrency.tryAcquire()
+        ) {
+            connections.release();
+
+            return null;
+        }
+
+        Proxy proxy = this._downloader.getProxies().tryAcquire();
+        if(proxy == null) {
+            this._release(connections, null, false);
+
+            return null;
+        }
+
+        try {
+            this._downloader.throttleRequests(host);
+        } catch(IOException e) {
+            this._release(connections, proxy, false);
+
+            throw e;
+        }
+
+        Console.debug("Hedging slow request to "+ this._request.getUrl());
+
+        return this._sendAsync(this._request.copy().setProxy(proxy), (failed) -> this._release(connections, proxy, failed));
+    }
+
+    /**
+     * Releases the permits taken by the hedge.
+     *
+     * @param connections Connections to the host.
+     * @param proxy       Proxy of the hedge, `null` if it didn't take one.
+     * @param failed      Whether the hedge failed because of congestion or not.
+     */
+    private void _release(Semaphore connections, Proxy proxy, boolean failed)
+    {
+        AdaptiveLimit concurrency = this._downloader.getConcurrency();
+
+        connections.release();
+
+        if(concurrency != null) {
+            concurrency.cancel(); // The hedge's latency would skew the windows.
+        }
+        if(proxy != null) {
+            this._downloader.getProxies().release(proxy, failed);
+        }
+    }
+
+    /**
+     * Sends a request on a hedging thread.
+     *
+     * The first successful response completes `_winner`, responses arriving
+     * after it are aborted. `_winner` fails only if every request sent for it
+     * failed.
+     *
+     * @param request Request to send.
+     * @param release Releases the permits of the request, `null` if it has none.
+     *                Receives whether the request failed because of congestion.
+     *
+     * @return Future completed with this request's response.
+     */
+    private CompletableFuture<Response> _sendAsync(Request request, Consumer<Boolean> release)
+    {
+        CompletableFuture<Response> attempt = new CompletableFuture<>();
+
+        this._pending.incrementAndGet();
+        this._executor.execute(() -> {
+            Response r;
+            try {
+                r = this._transport.send(request);
+            } catch(Throwable e) {
+                if(release != null) {
+                    release.accept(e instanceof IOException && FileDownloader.isCongestion((IOException)e));
+                }
+
+                attempt.completeExceptionally(e);
+
+                if(this._pending.decrementAndGet() == 0) {
+                    this._winner.completeExceptionally(e);
+                }
+
+                return;
+            }
+
+            if(release != null) {
+                r.addOnClose(() -> release.accept(false));
+            }
+
+            this._pending.decrementAndGet();
+            attempt.complete(r);
+
+            if(!this._winner.complete(r)) {
+                r.abort(); // Closing would read the rest of the body.
+            }
+        });
+
+        return attempt;
+    }
+}
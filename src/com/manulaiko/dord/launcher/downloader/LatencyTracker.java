@@ -0,0 +1,68 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.util.Arrays;
+
+/**
+ * Latency tracker.
+ *
+ * Keeps the latest response times of a category to compute
+ * running percentiles over them.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class LatencyTracker
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int SAMPLES     = 256;
+    private static final int MIN_SAMPLES = 20;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Latest response times, in nanoseconds.
+     */
+    private long[] _samples = new long[LatencyTracker.SAMPLES];
+
+    /**
+     * Amount of recorded samples.
+     */
+    private long _count = 0;
+
+    /**
+     * Records a response time.
+     *
+     * @param latency Response time, in nanoseconds.
+     */
+    public synchronized void record(long latency)
+    {
+        this._samples[(int)(this._count % LatencyTracker.SAMPLES)] = latency;
+        this._count++;
+    }
+
+    /**
+     * Returns a percentile of the latest response times.
+     *
+     * @param percentile Percentile, between 1 and 99.
+     *
+     * @return Response time in nanoseconds, `-1` if there aren't enough samples yet.
+     */
+    public long getPercentile(int percentile)
+    {
+        long[] sorted;
+
+        synchronized(this) {
+            if(this._count < LatencyTracker.MIN_SAMPLES) {
+                return -1;
+            }
+
+            sorted = Arrays.copyOf(this._samples, (int)Math.min(this._count, LatencyTracker.SAMPLES));
+        }
+
+        Arrays.sort(sorted);
+
+        return sorted[(sorted.length * percentile) / 100];
+    }
+}
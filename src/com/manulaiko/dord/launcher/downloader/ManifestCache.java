@@ -0,0 +1,163 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.manulaiko.dord.launcher.Main;
+import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Manifest cache.
+ *
+ * Fetches each XML file once per run and keeps its contents in memory,
+ * so the `xml` category and the categories that parse it share the same
+ * request. The parsers always read the fetched contents, the copy in the
+ * output tree is only written from them.
+ *
+ * When only planning the downloads, nothing is saved.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ManifestCache
+{
+    /**
+     * Downloader of the files.
+     */
+    private FileDownloader _downloader;
+
+    /**
+     * Path to save the files.
+     */
+    private File _path;
+
+    /**
+     * Contents of the requested files, indexed by path.
+     *
+     * Each future is completed once its download is done, with `null`
+     * if the file couldn't be downloaded.
+     */
+    private ConcurrentHashMap<String, CompletableFuture<byte[]>> _manifests = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param downloader Downloader of the files.
+     * @param path       Path to save the files.
+     */
+    public ManifestCache(FileDownloader downloader, File path)
+    {
+        this._downloader = downloader;
+        this._path       = path;
+    }
+
+    /**
+     * Fetches a file and saves it, unless it was already requested in this run.
+     *
+     * If another thread is fetching it, waits until it's done.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     *
+     * @return Saved bytes, `0` if it was already requested or wasn't saved.
+     */
+    public long download(String path, String category)
+    {
+        CompletableFuture<byte[]> manifest = new CompletableFuture<>();
+        CompletableFuture<byte[]> previous = this._manifests.putIfAbsent(path, manifest);
+
+        if(previous != null) {
+            previous.join();
+
+            return 0;
+        }
+
+        byte[] contents = null;
+        try {
+            contents = this._downloader.fetch(path, category);
+        } finally {
+            manifest.complete(contents);
+        }
+
+        if(
+            contents == null ||
+            Settings.plan
+        ) {
+            return 0;
+        }
+
+        return this._save(path, contents);
+    }
+
+    /**
+     * Saves the copy of a fetched file in the output tree.
+     *
+     * Existing copies are kept like any other downloaded file, unless
+     * overwriting or revalidating. The copy is replaced at once, so it's
+     * never left half written.
+     *
+     * @param path     Path on remote host to file.
+     * @param contents File contents.
+     *
+     * @return Saved bytes, `0` if the copy was kept.
+     */
+    private long _save(String path, byte[] contents)
+    {
+        Path file = Paths.get(Main.getPath(this._path, path));
+        Path part = Paths.get(file +".part");
+
+        try {
+            if(Files.exists(file)) {
+                if(
+                    !Settings.overwrite &&
+                    !Settings.revalidate
+                ) {
+                    Console.debug("Skipping already downloaded file '"+ file +"'");
+
+                    return 0;
+                }
+
+                if(Arrays.equals(contents, Files.readAllBytes(file))) {
+                    Console.debug("Skipping not modified file '"+ file +"'");
+
+                    return 0;
+                }
+            }
+
+            Files.createDirectories(file.getParent());
+            Files.write(part, contents);
+            Files.move(part, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+            return contents.length;
+        } catch(IOException e) {
+            Console.println("Couldn't save '"+ file +"'!");
+            Console.println(e.getMessage());
+
+            return 0;
+        }
+    }
+
+    /**
+     * Returns the contents of a file.
+     *
+     * Downloads it if it wasn't requested yet.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     *
+     * @return File contents, `null` if it couldn't be downloaded.
+     */
+    public byte[] get(String path, String category)
+    {
+        this.download(path, category);
+
+        return this._manifests.get(path).join();
+    }
+}
@@ -0,0 +1,293 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.BiConsumer;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Manifest reader.
+ *
+ * Streams the files of a XML manifest (`<location>` and `<file>` elements)
+ * while it's being parsed, so they can be downloaded before the whole
+ * manifest has been read.
+ *
+ * Files that reference a location that hasn't been read yet are kept
+ * until it appears.
+ *
+ * The `hash` and `version` attributes of the files are reported as
+ * their version, so unchanged files can be skipped.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ManifestReader implements Iterator<String>
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final XMLInputFactory FACTORY = ManifestReader._createFactory();
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Manifest name, used in the messages.
+     */
+    private String _name;
+
+    /**
+     * Suffix for the files of the manifest.
+     */
+    private String _suffix;
+
+    /**
+     * Receives the path and version of each file that has one.
+     */
+    private BiConsumer<String, String> _versions;
+
+    /**
+     * Manifest stream.
+     */
+    private InputStream _in;
+
+    /**
+     * XML reader, `null` once the manifest has been completely read.
+     */
+    private XMLStreamReader _reader;
+
+    /**
+     * Paths of the read locations, indexed by id.
+     */
+    private HashMap<String, String> _locations = new HashMap<>();
+
+    /**
+     * Files waiting for their location, indexed by location id.
+     */
+    private HashMap<String, ArrayList<String[]>> _pending = new HashMap<>();
+
+    /**
+     * Files ready to be returned.
+     */
+    private ArrayDeque<String> _ready = new ArrayDeque<>();
+
+    /**
+     * Constructor.
+     *
+     * @param name     Manifest name, used in the messages.
+     * @param in       Manifest stream, closed once it has been read.
+     * @param suffix   Suffix for the files of the manifest.
+     * @param versions Receives the path and version of each file that has one.
+     *
+     * @throws XMLStreamException If the manifest can't be read.
+     */
+    public ManifestReader(String name, InputStream in, String suffix, BiConsumer<String, String> versions) throws XMLStreamException
+    {
+        this._name     = name;
+        this._suffix   = suffix;
+        this._versions = versions;
+        this._in       = in;
+        this._reader   = ManifestReader.FACTORY.createXMLStreamReader(in);
+    }
+
+    /**
+     * Checks whether there are more files or not.
+     *
+     * Reads the manifest until the next file whose location is known.
+     *
+     * @return `true` if there are more files, `false` if the manifest has been completely read.
+     */
+    @Override
+    public boolean hasNext()
+    {
+        while(
+            this._ready.isEmpty() &&
+            this._reader != null
+        ) {
+            this._read();
+        }
+
+        return !this._ready.isEmpty();
+    }
+
+    /**
+     * Returns next file.
+     *
+     * @return Path of the next file.
+     */
+    @Override
+    public String next()
+    {
+        if(!this.hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        return this._ready.poll();
+    }
+
+    /**
+     * Reads the next element of the manifest.
+     */
+    private void _read()
+    {
+        try {
+            if(!this._reader.hasNext()) {
+                this._close();
+
+                return;
+            }
+
+            if(this._reader.next() != XMLStreamConstants.START_ELEMENT) {
+                return;
+            }
+
+            switch(this._reader.getLocalName())
+            {
+                case "location":
+                    this._addLocation(
+                            this._reader.getAttributeValue(null, "id"),
+                            this._reader.getAttributeValue(null, "path")
+                    );
+
+                    break;
+
+                case "file":
+                    this._addFile(
+                            this._reader.getAttributeValue(null, "location"),
+                            this._reader.getAttributeValue(null, "name") +"."+ this._reader.getAttributeValue(null, "type"),
+                            this._getVersion()
+                    );
+
+                    break;
+            }
+        } catch(XMLStreamException e) {
+            Console.debug("Couldn't parse '"+ this._name +"'!");
+            Console.debug(e.getMessage());
+
+            this._close();
+        }
+    }
+
+    /**
+     * Adds a location.
+     *
+     * The files waiting for it are ready.
+     *
+     * @param id   Location id.
+     * @param path Location path.
+     */
+    private void _addLocation(String id, String path)
+    {
+        this._locations.put(id, path);
+
+        ArrayList<String[]> files = this._pending.remove(id);
+        if(files == null) {
+            return;
+        }
+
+        for(String[] file : files) {
+            this._emit(path + file[0], file[1]);
+        }
+    }
+
+    /**
+     * Adds a file.
+     *
+     * @param location Location id.
+     * @param file     File name with its extension.
+     * @param version  File version, `null` if it has none.
+     */
+    private void _addFile(String location, String file, String version)
+    {
+        String path = this._locations.get(location);
+        if(path == null) {
+            this._pending.computeIfAbsent(location, (l) -> new ArrayList<>())
+                         .add(new String[] { file, version });
+
+            return;
+        }
+
+        this._emit(path + file, version);
+    }
+
+    /**
+     * Makes a file ready to be returned.
+     *
+     * @param file    File path inside the suffix.
+     * @param version File version, `null` if it has none.
+     */
+    private void _emit(String file, String version)
+    {
+        String path = this._suffix +"/"+ file;
+
+        if(version != null) {
+            this._versions.accept(path, version);
+        }
+
+        this._ready.add(path);
+    }
+
+    /**
+     * Returns the version of the current file.
+     *
+     * @return `hash` and `version` attributes, `null` if it has none.
+     */
+    private String _getVersion()
+    {
+        String hash    = this._reader.getAttributeValue(null, "hash");
+        String version = this._reader.getAttributeValue(null, "version");
+
+        if(hash == null) {
+            return version;
+        }
+
+        return (version == null) ? hash : hash +"/"+ version;
+    }
+
+    /**
+     * Closes the manifest.
+     *
+     * Files whose location never appeared are dropped.
+     */
+    private void _close()
+    {
+        try {
+            this._reader.close();
+            this._in.close();
+        } catch(XMLStreamException | IOException e) {
+            // Ignore
+        }
+
+        this._reader = null;
+
+        this._pending.forEach((location, files) -> {
+            Console.debug("Unknown location '"+ location +"' in '"+ this._name +"', skipping "+ files.size() +" files");
+        });
+        this._pending.clear();
+    }
+
+    /**
+     * Creates the factory of the XML readers.
+     *
+     * External entities are never resolved.
+     *
+     * @return Factory of the XML readers.
+     */
+    private static XMLInputFactory _createFactory()
+    {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+
+        return factory;
+    }
+}
@@ -0,0 +1,268 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Mirror pool.
+ *
+ * Keeps the hosts that serve the same files and scores them by their
+ * latency, their error rate and the requests they're answering. Each
+ * request goes to the best of two random healthy mirrors, so the load is
+ * spread while the slow ones get less of it.
+ *
+ * A mirror whose error rate gets too high is left out until the cooldown
+ * passes, unless there are no other mirrors left.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class MirrorPool
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final double ALPHA          = 0.2;
+    private static final double MAX_ERROR_RATE = 0.5;
+    private static final int    MIN_REQUESTS   = 5;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Mirrors, indexed by host.
+     */
+    private LinkedHashMap<String, Mirror> _mirrors = new LinkedHashMap<>();
+
+    /**
+     * Milliseconds a degraded mirror is left out.
+     */
+    private long _cooldown;
+
+    /**
+     * Constructor.
+     *
+     * @param hosts    Hosts of the mirrors, separated by commas.
+     * @param cooldown Milliseconds a degraded mirror is left out.
+     */
+    public MirrorPool(String hosts, long cooldown)
+    {
+        for(String host : hosts.split(",")) {
+            if(!host.trim().isEmpty()) {
+                this._mirrors.put(host.trim(), new Mirror(host.trim()));
+            }
+        }
+
+        this._cooldown = cooldown;
+    }
+
+    /**
+     * Returns the amount of mirrors.
+     *
+     * @return Amount of mirrors.
+     */
+    public int size()
+    {
+        return this._mirrors.size();
+    }
+
+    /**
+     * Returns the hosts of the mirrors.
+     *
+     * @return Hosts of the mirrors.
+     */
+    public synchronized ArrayList<String> getHosts()
+    {
+        return new ArrayList<>(this._mirrors.keySet());
+    }
+
+    /**
+     * Chooses a mirror for a request.
+     *
+     * Must be followed by `release`.
+     *
+     * @param excluded Hosts that already failed the request.
+     *
+     * @return Host of the chosen mirror.
+     */
+    public synchronized String acquire(Collection<String> excluded)
+    {
+        long              now        = System.currentTimeMillis();
+        ArrayList<Mirror> candidates = new ArrayList<>();
+
+        for(Mirror m : this._mirrors.values()) {
+            if(
+                !excluded.contains(m._host) &&
+                m._downUntil <= now
+            ) {
+                candidates.add(m);
+            }
+        }
+
+        if(candidates.isEmpty()) {
+            // Everything failed, try the least bad one.
+            for(Mirror m : this._mirrors.values()) {
+                if(!excluded.contains(m._host)) {
+                    candidates.add(m);
+                }
+            }
+        }
+
+        if(candidates.isEmpty()) {
+            candidates.addAll(this._mirrors.values());
+        }
+
+        Mirror mirror = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+        if(candidates.size() > 1) {
+            Mirror other = candidates.get(ThreadLocalRandom.current().nextInt(candidates.size()));
+
+            if(other._getScore() < mirror._getScore()) {
+                mirror = other;
+            }
+        }
+
+        mirror._inFlight++;
+        mirror._requests++;
+
+        return mirror._host;
+    }
+
+    /**
+     * Reports the end of a request.
+     *
+     * @param host   Host of the mirror.
+     * @param failed Whether the mirror failed to answer or not.
+     */
+    public synchronized void release(String host, boolean failed)
+    {
+        Mirror m = this._mirrors.get(host);
+        if(m == null) {
+            return;
+        }
+
+        m._inFlight--;
+        m._errorRate = m._errorRate * (1 - MirrorPool.ALPHA) + (failed ? MirrorPool.ALPHA : 0);
+
+        if(failed) {
+            m._errors++;
+        }
+
+        if(
+            failed                                  &&
+            m._requests  >= MirrorPool.MIN_REQUESTS &&
+            m._errorRate >  MirrorPool.MAX_ERROR_RATE
+        ) {
+            if(
+                m._downUntil < System.currentTimeMillis() &&
+                this._mirrors.size() > 1
+            ) {
+                Console.println(host +" is failing, sending requests to the other mirrors for "+ (this._cooldown / 1000) +" seconds.");
+            }
+
+            m._downUntil = System.currentTimeMillis() + this._cooldown;
+        }
+    }
+
+    /**
+     * Reports the time a mirror took to answer.
+     *
+     * @param host  Host of the mirror.
+     * @param nanos Nanoseconds until the response arrived.
+     */
+    public synchronized void latency(String host, long nanos)
+    {
+        Mirror m = this._mirrors.get(host);
+        if(m == null) {
+            return;
+        }
+
+        m._latency = (m._latency < 0) ? nanos : (long)(m._latency * (1 - MirrorPool.ALPHA) + nanos * MirrorPool.ALPHA);
+    }
+
+    /**
+     * Returns the stats of the mirrors.
+     *
+     * @return Requests, latency and errors of each mirror.
+     */
+    public synchronized String getStats()
+    {
+        StringBuilder sb = new StringBuilder("Mirrors:");
+
+        for(Mirror m : this._mirrors.values()) {
+            sb.append("\n  ").append(m._host).append(": ")
+              .append(m._requests).append(" requests, ")
+              .append(m._errors).append(" errors, ")
+              .append((m._latency < 0) ? "unknown" : (m._latency / 1000000) +" ms").append(" latency");
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Mirror class.
+     *
+     * Keeps the stats of a mirror.
+     */
+    private static class Mirror
+    {
+        /**
+         * Mirror host.
+         */
+        private String _host;
+
+        /**
+         * Average nanoseconds until a response arrives, `-1` if unknown.
+         */
+        private long _latency = -1;
+
+        /**
+         * Average rate of failed requests, between 0 and 1.
+         */
+        private double _errorRate = 0;
+
+        /**
+         * Requests being answered.
+         */
+        private int _inFlight = 0;
+
+        /**
+         * Sent requests.
+         */
+        private long _requests = 0;
+
+        /**
+         * Failed requests.
+         */
+        private long _errors = 0;
+
+        /**
+         * Time until the mirror is left out.
+         */
+        private long _downUntil = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param host Mirror host.
+         */
+        Mirror(String host)
+        {
+            this._host = host;
+        }
+
+        /**
+         * Returns the score of the mirror.
+         *
+         * Mirrors with unknown latency score best, so they're tried.
+         *
+         * @return Expected wait for a new request, lower is better.
+         */
+        private double _getScore()
+        {
+            return Math.max(0, this._latency) * (this._inFlight + 1) / Math.max(0.05, 1 - this._errorRate);
+        }
+    }
+}
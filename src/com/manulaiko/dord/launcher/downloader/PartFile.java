@@ -0,0 +1,255 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Part file.
+ *
+ * Partial download of a file, written to `path.part` and renamed once
+ * it's complete.
+ *
+ * The validator it was downloaded with is stored next to it, in
+ * `path.part.state`, as soon as it's created. That way it can be resumed
+ * with `If-Range` even if the run is killed, and a part file without a
+ * stored validator is downloaded again instead of being resumed, since
+ * there's no way to know whether the remote file changed.
+ *
+ * Part files are preallocated, so their length isn't the amount of
+ * downloaded bytes. The bytes written from the start of the file are
+ * stored with the validator every few megabytes, once they're on disk,
+ * and only those are resumed.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class PartFile
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long CHECKPOINT_SIZE = 4 * 1024 * 1024;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Partial file.
+     */
+    private File _file;
+
+    /**
+     * File where the validator is stored.
+     */
+    private File _state;
+
+    /**
+     * Validator of the remote file, `null` if it's unknown.
+     */
+    private String _validator;
+
+    /**
+     * Bytes written from the start of the file, as last stored.
+     */
+    private long _written = 0;
+
+    /**
+     * Open file, `null` until it's opened.
+     */
+    private RandomAccessFile _raf;
+
+    /**
+     * Constructor.
+     *
+     * Loads the stored validator and written bytes, if any.
+     *
+     * @param path Path of the complete file.
+     */
+    public PartFile(String path)
+    {
+        this._file  = new File(path +".part");
+        this._state = new File(path +".part.state");
+
+        if(!this._state.exists()) {
+            return;
+        }
+
+        try(Reader r = new FileReader(this._state)) {
+            Properties p = new Properties();
+            p.load(r);
+
+            this._validator = p.getProperty("validator");
+            this._written   = Long.parseLong(p.getProperty("written", "0"));
+        } catch(IOException | NumberFormatException e) {
+            // Ignore, it will be downloaded again.
+        }
+    }
+
+    /**
+     * Returns the partial file.
+     *
+     * @return Partial file.
+     */
+    public File getFile()
+    {
+        return this._file;
+    }
+
+    /**
+     * Returns the validator of the remote file.
+     *
+     * @return `ETag` or `Last-Modified` of the remote file, `null` if it's unknown.
+     */
+    public String getValidator()
+    {
+        return this._validator;
+    }
+
+    /**
+     * Returns the bytes that can be resumed.
+     *
+     * @return Stored written bytes, `0` if there's no partial file or it has no validator.
+     */
+    public long getOffset()
+    {
+        if(this._validator == null) {
+            return 0;
+        }
+
+        return Math.min(this._file.length(), this._written);
+    }
+
+    /**
+     * Starts writing the partial file.
+     *
+     * Stores the validator before anything is written.
+     *
+     * @param validator Validator of the remote file, `null` if it has none.
+     * @param offset    Bytes of the file that are kept.
+     *
+     * @return The opened file.
+     *
+     * @throws IOException If the file couldn't be opened or the validator stored.
+     */
+    public RandomAccessFile open(String validator, long offset) throws IOException
+    {
+        this._validator = validator;
+        this._save(offset);
+
+        this._raf = new RandomAccessFile(this._file, "rw");
+
+        return this._raf;
+    }
+
+    /**
+     * Reports the bytes written from the start of the file.
+     *
+     * They're stored once enough bytes were written since the last time.
+     *
+     * @param written Bytes written from the start of the file.
+     *
+     * @throws IOException If they couldn't be stored.
+     */
+    public void written(long written) throws IOException
+    {
+        if(written - this._written < PartFile.CHECKPOINT_SIZE) {
+            return;
+        }
+
+        this._raf.getChannel().force(false); // The bytes must be on disk before they're resumed.
+        this._save(written);
+    }
+
+    /**
+     * Truncates the file back to the bytes written from its start.
+     *
+     * @param written Bytes written from the start of the file.
+     *
+     * @throws IOException If the file couldn't be truncated.
+     */
+    public void truncate(long written) throws IOException
+    {
+        this._raf.getChannel().truncate(written);
+        this._save(written);
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException If it couldn't be closed.
+     */
+    public void close() throws IOException
+    {
+        if(this._raf != null) {
+            this._raf.close();
+        }
+    }
+
+    /**
+     * Moves the completely downloaded file to its final path.
+     *
+     * @param file Final path.
+     *
+     * @throws IOException If the file couldn't be moved.
+     */
+    public void complete(File file) throws IOException
+    {
+        try {
+            Files.move(this._file.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch(AtomicMoveNotSupportedException e) {
+            Files.move(this._file.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+
+        Files.deleteIfExists(this._state.toPath());
+    }
+
+    /**
+     * Deletes the partial file.
+     *
+     * @throws IOException If it couldn't be deleted.
+     */
+    public void delete() throws IOException
+    {
+        Files.deleteIfExists(this._file.toPath());
+        Files.deleteIfExists(this._state.toPath());
+
+        this._validator = null;
+        this._written   = 0;
+    }
+
+    /**
+     * Stores the validator and the written bytes.
+     *
+     * Without a validator the file can't be resumed, so nothing is stored.
+     *
+     * @param written Bytes written from the start of the file.
+     *
+     * @throws IOException If they couldn't be stored.
+     */
+    private synchronized void _save(long written) throws IOException
+    {
+        this._written = written;
+
+        if(this._validator == null) {
+            Files.deleteIfExists(this._state.toPath());
+
+            return;
+        }
+
+        Properties p = new Properties();
+        p.setProperty("validator", this._validator);
+        p.setProperty("written", String.valueOf(written));
+
+        try(Writer w = new FileWriter(this._state)) {
+            p.store(w, "DarkOrbit Resources Downloader partial file, don't edit.");
+        }
+    }
+}
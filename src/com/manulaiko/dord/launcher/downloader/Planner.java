@@ -0,0 +1,326 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.manulaiko.dord.launcher.Main;
+import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Download planner.
+ *
+ * Sizes a run without downloading the files: the ones that aren't present
+ * yet are probed with a HEAD request and the ones that are use their local
+ * size. The report includes an estimated duration from the measured
+ * latency of the probes and the speed of the fetched manifests.
+ *
+ * Probes run in the background, up to `connectionsPerHost` at the same
+ * time, so they aren't limited by the workers that queue the files.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Planner
+{
+    /**
+     * Downloader of the files.
+     */
+    private FileDownloader _downloader;
+
+    /**
+     * Path to download the files.
+     */
+    private File _path;
+
+    /**
+     * Planned categories, in the order they were added.
+     */
+    private Map<String, Category> _categories = Collections.synchronizedMap(new LinkedHashMap<>());
+
+    /**
+     * Nanoseconds spent probing files.
+     */
+    private LongAdder _probeTime = new LongAdder();
+
+    /**
+     * Amount of probed files.
+     */
+    private LongAdder _probes = new LongAdder();
+
+    /**
+     * Executor that probes the files.
+     */
+    private ExecutorService _probing = Executors.newVirtualThreadPerTaskExecutor();
+
+    /**
+     * Probes that can run at the same time.
+     */
+    private Semaphore _connections = new Semaphore(Settings.connectionsPerHost);
+
+    /**
+     * Constructor.
+     *
+     * @param downloader Downloader of the files.
+     * @param path       Path to download the files.
+     */
+    public Planner(FileDownloader downloader, File path)
+    {
+        this._downloader = downloader;
+        this._path       = path;
+    }
+
+    /**
+     * Adds a file to the plan.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     *
+     * @return Size of the file, `0` if it's unknown or still being probed.
+     */
+    public long add(String path, String category)
+    {
+        Category c    = this._categories.computeIfAbsent(category, Category::new);
+        File     file = new File(Main.getPath(this._path, path));
+
+        if(
+            file.exists()       &&
+            !Settings.overwrite
+        ) {
+            c.add(path, file.length(), true);
+
+            return file.length();
+        }
+
+        this._probing.execute(() -> this._probe(path, c));
+
+        return 0;
+    }
+
+    /**
+     * Probes a missing file and adds it to its category.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     */
+    private void _probe(String path, Category category)
+    {
+        try {
+            this._connections.acquire();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return;
+        }
+
+        try {
+            long start = System.nanoTime();
+            long size  = this._downloader.probe(path);
+
+            this._probeTime.add(System.nanoTime() - start);
+            this._probes.increment();
+
+            category.add(path, size, false);
+        } finally {
+            this._connections.release();
+        }
+    }
+
+    /**
+     * Prints the plan.
+     */
+    public void print()
+    {
+        this._probing.close(); // Waits for the probes still running.
+
+        long   files   = 0;
+        long   present = 0;
+        long   bytes   = 0;
+        long   missing = 0;
+        long   unknown = 0;
+        long   largest = -1;
+        String path    = null;
+
+        ArrayList<Category> categories;
+        synchronized(this._categories) {
+            categories = new ArrayList<>(this._categories.values());
+        }
+
+        for(Category c : categories) {
+            Console.println(c.toString());
+
+            files   += c._files.sum();
+            present += c._present.sum();
+            bytes   += c._bytes.sum();
+            missing += c._missing.sum();
+            unknown += c._unknown.sum();
+
+            if(c._largest > largest) {
+                largest = c._largest;
+                path    = c._largestPath;
+            }
+        }
+
+        Console.println("Plan: "+ files +" files ("+ present +" already present) of "+ Downloader.formatBytes(bytes));
+        if(path != null) {
+            Console.println("Largest file: "+ path +" ("+ Downloader.formatBytes(largest) +")");
+        }
+        if(unknown > 0) {
+            Console.println(unknown +" files of unknown size");
+        }
+
+        long millis = this._estimate(files - present, missing);
+        if(millis < 0) {
+            Console.println("Would download "+ Downloader.formatBytes(missing) +", couldn't estimate the duration");
+        } else {
+            Console.println("Would download "+ Downloader.formatBytes(missing) +" in about "+ Downloader.formatTime(millis));
+        }
+    }
+
+    /**
+     * Estimates the duration of the downloads.
+     *
+     * Each file takes the average latency of the probes plus its size at
+     * the speed of the fetched manifests (or the rate limit, if lower),
+     * and `workers` (or `connectionsPerHost`) files download at once.
+     *
+     * @param files Amount of files to download.
+     * @param bytes Bytes to download.
+     *
+     * @return Estimated milliseconds, `-1` if nothing was measured.
+     */
+    private long _estimate(long files, long bytes)
+    {
+        long   parallelism = Settings.virtualThreads ? Settings.connectionsPerHost : Settings.workers;
+        long   throughput  = this._downloader.getFetchThroughput();
+        long   probes      = this._probes.sum();
+        double latency     = (probes > 0) ? this._probeTime.sum() / (double)probes / 1e6 : 0;
+
+        if(throughput <= 0) {
+            return (bytes > 0) ? -1 : (long)(files * latency / parallelism);
+        }
+
+        double speed = (double)throughput * parallelism;
+        if(Settings.bytesPerSecond > 0) {
+            speed = Math.min(speed, Settings.bytesPerSecond);
+        }
+
+        return (long)(files * latency / parallelism + bytes / speed * 1000);
+    }
+
+    /**
+     * Category class.
+     *
+     * Keeps the plan of a category.
+     */
+    private static class Category
+    {
+        /**
+         * Category name.
+         */
+        private String _name;
+
+        /**
+         * Amount of files.
+         */
+        private LongAdder _files = new LongAdder();
+
+        /**
+         * Amount of files already present.
+         */
+        private LongAdder _present = new LongAdder();
+
+        /**
+         * Size of the files.
+         */
+        private LongAdder _bytes = new LongAdder();
+
+        /**
+         * Size of the files that aren't present.
+         */
+        private LongAdder _missing = new LongAdder();
+
+        /**
+         * Amount of files of unknown size.
+         */
+        private LongAdder _unknown = new LongAdder();
+
+        /**
+         * Size of the largest file.
+         */
+        private long _largest = -1;
+
+        /**
+         * Path of the largest file.
+         */
+        private String _largestPath;
+
+        /**
+         * Constructor.
+         *
+         * @param name Category name.
+         */
+        Category(String name)
+        {
+            this._name = name;
+        }
+
+        /**
+         * Adds a file.
+         *
+         * @param path    Path on remote host to file.
+         * @param size    File size, `-1` if it's unknown.
+         * @param present Whether the file is already present or not.
+         */
+        void add(String path, long size, boolean present)
+        {
+            this._files.increment();
+
+            if(present) {
+                this._present.increment();
+            }
+
+            if(size < 0) {
+                this._unknown.increment();
+
+                return;
+            }
+
+            this._bytes.add(size);
+            if(!present) {
+                this._missing.add(size);
+            }
+
+            synchronized(this) {
+                if(size > this._largest) {
+                    this._largest     = size;
+                    this._largestPath = path;
+                }
+            }
+        }
+
+        /**
+         * Returns the plan of the category.
+         *
+         * @return Files, sizes and largest file of the category.
+         */
+        @Override
+        public synchronized String toString()
+        {
+            String s = this._name +": "+ this._files.sum() +" files ("+ this._present.sum() +" already present) of "+
+                       Downloader.formatBytes(this._bytes.sum());
+
+            if(this._largestPath != null) {
+                s += ", largest "+ this._largestPath +" ("+ Downloader.formatBytes(this._largest) +")";
+            }
+
+            return s;
+        }
+    }
+}
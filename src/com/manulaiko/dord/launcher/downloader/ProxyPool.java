@@ -0,0 +1,348 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Proxy pool.
+ *
+ * Spreads the requests between several HTTP proxies. Each request goes
+ * through the healthy proxy with the fewest requests in progress, and no
+ * proxy handles more than `maxRequests` at the same time, once all of them
+ * are busy the requests wait for one to be free.
+ *
+ * A proxy that fails `threshold` times in a row is left out until the
+ * cooldown passes, unless all of them are.
+ *
+ * Without proxies, requests connect directly.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ProxyPool
+{
+    /**
+     * Proxies of the pool.
+     */
+    private ArrayList<Entry> _proxies = new ArrayList<>();
+
+    /**
+     * Maximum requests in progress through a single proxy.
+     */
+    private int _maxRequests;
+
+    /**
+     * Consecutive failures that leave a proxy out.
+     */
+    private int _threshold;
+
+    /**
+     * Milliseconds a failing proxy is left out.
+     */
+    private long _cooldown;
+
+    /**
+     * Proxy chosen last, so ties are taken in turns.
+     */
+    private int _last = -1;
+
+    /**
+     * Guards the proxies.
+     *
+     * A lock instead of `synchronized`, so virtual threads waiting
+     * for a proxy don't pin their carrier.
+     */
+    private ReentrantLock _lock = new ReentrantLock();
+
+    /**
+     * Signalled when a request through a proxy finishes.
+     */
+    private Condition _released = this._lock.newCondition();
+
+    /**
+     * Constructor.
+     *
+     * @param proxies     Proxies as `host:port`, separated by commas.
+     * @param maxRequests Maximum requests in progress through a single proxy.
+     * @param threshold   Consecutive failures that leave a proxy out.
+     * @param cooldown    Milliseconds a failing proxy is left out.
+     */
+    public ProxyPool(String proxies, int maxRequests, int threshold, long cooldown)
+    {
+        for(String proxy : proxies.split(",")) {
+            String[] address = proxy.trim().split(":");
+            if(address.length != 2) {
+                continue;
+            }
+
+            this._proxies.add(new Entry(
+                    proxy.trim(),
+                    new Proxy(Proxy.Type.HTTP, new InetSocketAddress(address[0], Integer.parseInt(address[1])))
+            ));
+        }
+
+        this._maxRequests = maxRequests;
+        this._threshold   = threshold;
+        this._cooldown    = cooldown;
+    }
+
+    /**
+     * Returns the amount of proxies.
+     *
+     * @return Amount of proxies.
+     */
+    public int size()
+    {
+        return this._proxies.size();
+    }
+
+    /**
+     * Chooses the proxy for a request.
+     *
+     * Waits while all proxies are busy. Must be followed by `release`.
+     *
+     * @return Proxy to use, `Proxy.NO_PROXY` if there are none.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public Proxy acquire() throws InterruptedException
+    {
+        if(this._proxies.isEmpty()) {
+            return Proxy.NO_PROXY;
+        }
+
+        this._lock.lock();
+        try {
+            Entry proxy;
+            while((proxy = this._choose()) == null) {
+                this._released.await();
+            }
+
+            proxy._requests++;
+            proxy._sent++;
+
+            return proxy._proxy;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Chooses the proxy for a request, without waiting.
+     *
+     * Must be followed by `release` if it returns a proxy.
+     *
+     * @return Proxy to use, `Proxy.NO_PROXY` if there are none, `null` if all of them are busy.
+     */
+    public Proxy tryAcquire()
+    {
+        if(this._proxies.isEmpty()) {
+            return Proxy.NO_PROXY;
+        }
+
+        this._lock.lock();
+        try {
+            Entry proxy = this._choose();
+            if(proxy == null) {
+                return null;
+            }
+
+            proxy._requests++;
+            proxy._sent++;
+
+            return proxy._proxy;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Reports the end of a request.
+     *
+     * @param proxy  Used proxy.
+     * @param failed Whether the proxy failed or not.
+     */
+    public void release(Proxy proxy, boolean failed)
+    {
+        Entry entry = this._find(proxy);
+        if(entry == null) {
+            return;
+        }
+
+        this._lock.lock();
+        try {
+            entry._requests--;
+
+            if(!failed) {
+                entry._failures = 0;
+            } else {
+                entry._failures++;
+                entry._errors++;
+
+                if(entry._failures >= this._threshold) {
+                    if(entry._downUntil < System.currentTimeMillis()) {
+                        Console.println("Proxy "+ entry._name +" keeps failing, leaving it out for "+ (this._cooldown / 1000) +" seconds.");
+                    }
+
+                    entry._downUntil = System.currentTimeMillis() + this._cooldown;
+                }
+            }
+
+            this._released.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the stats of the proxies.
+     *
+     * @return Requests and errors of each proxy.
+     */
+    public String getStats()
+    {
+        StringBuilder sb = new StringBuilder("Proxies:");
+
+        this._lock.lock();
+        try {
+            for(Entry proxy : this._proxies) {
+                sb.append("\n  ").append(proxy._name).append(": ")
+                  .append(proxy._sent).append(" requests, ")
+                  .append(proxy._errors).append(" errors");
+            }
+        } finally {
+            this._lock.unlock();
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Chooses the proxy with the fewest requests in progress.
+     *
+     * Healthy proxies are preferred, failing ones are only used if
+     * there are no healthy ones.
+     *
+     * @return Chosen proxy, `null` if all of them are busy.
+     */
+    private Entry _choose()
+    {
+        long  now     = System.currentTimeMillis();
+        Entry healthy = null;
+        Entry failing = null;
+        int   chosen  = -1;
+
+        for(int i = 1; i <= this._proxies.size(); i++) {
+            int   index = (this._last + i) % this._proxies.size();
+            Entry proxy = this._proxies.get(index);
+
+            if(proxy._requests >= this._maxRequests) {
+                continue;
+            }
+
+            if(proxy._downUntil > now) {
+                if(
+                    failing == null ||
+                    proxy._requests < failing._requests
+                ) {
+                    failing = proxy;
+                }
+
+                continue;
+            }
+
+            if(
+                healthy == null ||
+                proxy._requests < healthy._requests
+            ) {
+                healthy = proxy;
+                chosen  = index;
+            }
+        }
+
+        if(healthy == null) {
+            return failing;
+        }
+
+        this._last = chosen;
+
+        return healthy;
+    }
+
+    /**
+     * Finds the entry of a proxy.
+     *
+     * @param proxy Proxy to find.
+     *
+     * @return Entry of `proxy`, `null` if it isn't in the pool.
+     */
+    private Entry _find(Proxy proxy)
+    {
+        for(Entry entry : this._proxies) {
+            if(entry._proxy == proxy) {
+                return entry;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Entry class.
+     *
+     * Keeps a proxy and its stats.
+     */
+    private static class Entry
+    {
+        /**
+         * Proxy address, as given.
+         */
+        private String _name;
+
+        /**
+         * Proxy.
+         */
+        private Proxy _proxy;
+
+        /**
+         * Requests in progress.
+         */
+        private int _requests = 0;
+
+        /**
+         * Sent requests.
+         */
+        private long _sent = 0;
+
+        /**
+         * Failed requests.
+         */
+        private long _errors = 0;
+
+        /**
+         * Consecutive failures.
+         */
+        private int _failures = 0;
+
+        /**
+         * Time until the proxy is left out.
+         */
+        private long _downUntil = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param name  Proxy address, as given.
+         * @param proxy Proxy.
+         */
+        Entry(String name, Proxy proxy)
+        {
+            this._name  = name;
+            this._proxy = proxy;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.IOException;
+
+/**
+ * Range ignored exception.
+ *
+ * Thrown when the host sends the whole file to a range request, either
+ * because it ignores ranges or because the file changed and `If-Range`
+ * didn't match.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class RangeIgnoredException extends IOException
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long serialVersionUID = 1L;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Whether the file changed or not.
+     */
+    private boolean _changed;
+
+    /**
+     * Constructor.
+     *
+     * @param path    Requested file.
+     * @param changed Whether the file changed or not.
+     */
+    public RangeIgnoredException(String path, boolean changed)
+    {
+        super(changed ? path +" changed while it was being downloaded" : "Server ignored the range of "+ path);
+
+        this._changed = changed;
+    }
+
+    /**
+     * Checks whether the file changed or not.
+     *
+     * @return `true` if the file changed, `false` if the host ignored the range.
+     */
+    public boolean isChanged()
+    {
+        return this._changed;
+    }
+}
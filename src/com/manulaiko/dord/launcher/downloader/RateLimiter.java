@@ -0,0 +1,99 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Rate limiter.
+ *
+ * Token bucket that refills `rate` permits per second and holds up to
+ * one second of them. It's implemented as a virtual schedule (GCRA): a
+ * single atomic timestamp says when the bucket would be empty, each
+ * caller moves it forward with a CAS and sleeps if it went too far
+ * ahead, so there's no lock to contend on.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class RateLimiter
+{
+    /**
+     * Nanoseconds it takes to refill a permit.
+     */
+    private double _nanosPerPermit;
+
+    /**
+     * Nanoseconds worth of permits the bucket can hold.
+     */
+    private long _capacity = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Time at which all taken permits would have been refilled.
+     */
+    private AtomicLong _emptyUntil = new AtomicLong(System.nanoTime());
+
+    /**
+     * Constructor.
+     *
+     * @param rate Permits per second.
+     */
+    public RateLimiter(long rate)
+    {
+        this._nanosPerPermit = (double)TimeUnit.SECONDS.toNanos(1) / rate;
+    }
+
+    /**
+     * Takes permits, waiting until they're available.
+     *
+     * @param permits Amount of permits to take.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public void acquire(long permits) throws InterruptedIOException
+    {
+        this.acquire(permits, 0);
+    }
+
+    /**
+     * Takes permits, waiting until they're available or the deadline passes.
+     *
+     * @param permits  Amount of permits to take.
+     * @param deadline `System.nanoTime()` at which it stops waiting, `0` means never.
+     *
+     * @return `true` if the permits are available, `false` if the deadline passed first.
+     *
+     * @throws InterruptedIOException If the thread is interrupted while waiting.
+     */
+    public boolean acquire(long permits, long deadline) throws InterruptedIOException
+    {
+        long cost = (long)(permits * this._nanosPerPermit);
+        long now  = System.nanoTime();
+        long emptyUntil;
+        long next;
+
+        do {
+            emptyUntil = this._emptyUntil.get();
+            next       = Math.max(emptyUntil, now) + cost;
+        } while(!this._emptyUntil.compareAndSet(emptyUntil, next));
+
+        long wait = next - this._capacity - now;
+        if(wait <= 0) {
+            return true;
+        }
+
+        boolean expired = deadline != 0 && now + wait - deadline > 0;
+        if(expired) {
+            wait = deadline - now;
+        }
+
+        try {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while throttled");
+        }
+
+        return !expired;
+    }
+}
@@ -0,0 +1,131 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.manulaiko.dord.launcher.downloader.transport.HttpStatusException;
+
+/**
+ * Retry policy.
+ *
+ * Decides whether a failed download is tried again and how long to
+ * wait before doing it.
+ *
+ * The wait grows exponentially with each attempt and is randomized
+ * between zero and that value ("full jitter"), so workers that failed
+ * at the same time don't retry at the same time.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class RetryPolicy
+{
+    /**
+     * Maximum amount of attempts, including the first one.
+     */
+    private int _maxAttempts;
+
+    /**
+     * Milliseconds to wait before the first retry.
+     */
+    private long _baseDelay;
+
+    /**
+     * Maximum milliseconds to wait before a retry.
+     */
+    private long _maxDelay;
+
+    /**
+     * Constructor.
+     *
+     * @param maxAttempts Maximum amount of attempts, including the first one.
+     * @param baseDelay   Milliseconds to wait before the first retry.
+     * @param maxDelay    Maximum milliseconds to wait before a retry.
+     */
+    public RetryPolicy(int maxAttempts, long baseDelay, long maxDelay)
+    {
+        this._maxAttempts = maxAttempts;
+        this._baseDelay   = baseDelay;
+        this._maxDelay    = maxDelay;
+    }
+
+    /**
+     * Checks whether a failed attempt should be retried or not.
+     *
+     * @param e       Error of the attempt.
+     * @param attempt Number of the failed attempt, starting at 1.
+     *
+     * @return Whether a failed attempt should be retried or not.
+     */
+    public boolean shouldRetry(IOException e, int attempt)
+    {
+        return attempt < this._maxAttempts && RetryPolicy.isRetryable(e);
+    }
+
+    /**
+     * Returns how long to wait before retrying.
+     *
+     * @param attempt Number of the failed attempt, starting at 1.
+     *
+     * @return Milliseconds to wait.
+     */
+    public long getDelay(int attempt)
+    {
+        long cap = Math.min(this._maxDelay, this._baseDelay << Math.min(attempt - 1, 30));
+
+        return ThreadLocalRandom.current().nextLong(cap + 1);
+    }
+
+    /**
+     * Checks whether an error is transient or not.
+     *
+     * @param e Download error.
+     *
+     * @return `true` for 408, 429 and 5xx answers and network errors, `false`
+     *         for other answers, local and protocol errors, interruptions and
+     *         open circuits.
+     */
+    public static boolean isRetryable(IOException e)
+    {
+        if(e instanceof HttpStatusException) {
+            int status = ((HttpStatusException)e).getStatus();
+
+            return status == 408 || status == 429 || status >= 500;
+        }
+
+        return RetryPolicy.isNetworkError(e);
+    }
+
+    /**
+     * Checks whether an error was caused by the network or not.
+     *
+     * Connect, socket, timeout and reset errors are, also when the transport
+     * wraps them, and so are connections closed before the whole response
+     * arrived. Local errors (like a full disk), malformed or unexpected
+     * responses, interruptions and open circuits aren't.
+     *
+     * @param e Download error.
+     *
+     * @return `true` if the error was caused by the network, `false` if not.
+     */
+    public static boolean isNetworkError(IOException e)
+    {
+        for(Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if(
+                cause instanceof SocketException        ||
+                cause instanceof SocketTimeoutException ||
+                cause instanceof HttpTimeoutException   ||
+                cause instanceof UnknownHostException   ||
+                cause instanceof EOFException
+            ) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
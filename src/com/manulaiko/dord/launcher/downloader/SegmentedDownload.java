@@ -0,0 +1,288 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.dord.launcher.downloader.transport.HttpStatusException;
+import com.manulaiko.dord.launcher.downloader.transport.Request;
+import com.manulaiko.dord.launcher.downloader.transport.Response;
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Segmented download.
+ *
+ * Downloads a file in concurrent byte ranges. The first range is read
+ * from the response that was already received, the others are requested
+ * at the same time and written at their offsets.
+ *
+ * Every range is requested with `If-Range`, so a file that changes while
+ * its segments are downloaded isn't mixed with its old bytes.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class SegmentedDownload
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long MAX_BUFFER_SIZE = 256 * 1024;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Downloader the file belongs to.
+     */
+    private FileDownloader _downloader;
+
+    /**
+     * Downloaded URL.
+     */
+    private URL _url;
+
+    /**
+     * Proxy the file is downloaded through.
+     */
+    private Proxy _proxy;
+
+    /**
+     * Validator of the file, sent in `If-Range`.
+     */
+    private String _validator;
+
+    /**
+     * Category of the file.
+     */
+    private String _category;
+
+    /**
+     * Responses of the segments being read.
+     */
+    private Set<Response> _responses = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Whether a segment failed or not.
+     */
+    private AtomicBoolean _failed = new AtomicBoolean();
+
+    /**
+     * Constructor.
+     *
+     * @param downloader Downloader the file belongs to.
+     * @param url        Downloaded URL.
+     * @param proxy      Proxy the file is downloaded through.
+     * @param validator  Validator of the file, sent in `If-Range`.
+     * @param category   Category of the file.
+     */
+    public SegmentedDownload(FileDownloader downloader, URL url, Proxy proxy, String validator, String category)
+    {
+        this._downloader = downloader;
+        this._url        = url;
+        this._proxy      = proxy;
+        this._validator  = validator;
+        this._category   = category;
+    }
+
+    /**
+     * Writes a response in segments.
+     *
+     * The body of `r` is split in `count` ranges, if any of them fails the
+     * others are aborted.
+     *
+     * @param r     Server response.
+     * @param file  File to write, already sized to the body.
+     * @param count Amount of segments.
+     *
+     * @return Written bytes.
+     *
+     * @throws RangeIgnoredException If the host sent the whole file to a segment,
+     *                               or the file changed.
+     * @throws IOException           If any segment couldn't be downloaded.
+     */
+    public long write(Response r, FileChannel file, int count) throws IOException
+    {
+        long                    length   = r.getContentLength();
+        long                    size     = (length + count - 1) / count;
+        ArrayList<Future<Long>> segments = new ArrayList<>();
+        IOException             error    = null;
+        long                    bytes    = 0;
+
+        Console.debug("Downloading "+ this._url +" in "+ count +" segments");
+
+        this._responses.add(r);
+        try(ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for(int i = 1; i < count; i++) {
+                long start = i * size;
+                long end   = Math.min(length, start + size);
+
+                segments.add(executor.submit(() -> this._downloadSegment(file, start, end)));
+            }
+
+            try {
+                bytes = this._writeRange(r, file, 0, size);
+            } catch(IOException e) {
+                error = e;
+                this._fail();
+            } finally {
+                r.abort(); // The rest of the body belongs to the other segments.
+            }
+
+            for(Future<Long> segment : segments) {
+                try {
+                    bytes += segment.get();
+                } catch(ExecutionException e) {
+                    if(
+                        error == null ||
+                        e.getCause() instanceof RangeIgnoredException // The others were aborted because of it.
+                    ) {
+                        error = FileDownloader.unwrap(e);
+                    }
+                    this._fail();
+                } catch(InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    this._fail();
+
+                    error = new InterruptedIOException("Interrupted downloading "+ this._url);
+                }
+            }
+        }
+
+        if(error != null) {
+            throw error;
+        }
+
+        return bytes;
+    }
+
+    /**
+     * Downloads a segment of the file.
+     *
+     * @param file  File to write.
+     * @param start First byte of the segment.
+     * @param end   Byte after the last one of the segment.
+     *
+     * @return Written bytes.
+     *
+     * @throws IOException If the segment couldn't be downloaded.
+     */
+    private long _downloadSegment(FileChannel file, long start, long end) throws IOException
+    {
+        Request request = new Request(this._url);
+        request.setRange(start, end - 1, this._validator)
+               .setProxy(this._proxy) // Segments share the proxy of their file.
+               .setTimeout(this._downloader.getWatchdog().getTimeout(Settings.firstByteTimeout * 1000L));
+
+        if(this._failed.get()) {
+            return 0;
+        }
+
+        this._downloader.throttleRequests(this._url.getHost());
+
+        try(Response r = this._downloader.send(request, this._category)) {
+            this._responses.add(r);
+            if(this._failed.get()) {
+                r.abort();
+
+                return 0;
+            }
+
+            if(r.getStatus() == 200) {
+                // Ignored the range, or the file changed since the first segment and If-Range didn't match.
+                this._fail();
+
+                String current = r.getRangeValidator();
+
+                throw new RangeIgnoredException(this._url.toString(), current != null && !current.equals(this._validator));
+            }
+
+            if(r.getStatus() != 206) {
+                throw new HttpStatusException(this._url, r.getStatus());
+            }
+
+            if(r.getRangeStart() != start) {
+                throw new IOException("Server sent the wrong range for "+ this._url);
+            }
+
+            return this._writeRange(r, file, start, end - start);
+        }
+    }
+
+    /**
+     * Stops the segments of the file.
+     */
+    private void _fail()
+    {
+        this._failed.set(true);
+        this._responses.forEach(Response::abort);
+    }
+
+    /**
+     * Writes a range of the file from a response.
+     *
+     * Only `length` bytes are read, the rest of the body is left unread.
+     *
+     * @param r      Server response.
+     * @param file   File to write.
+     * @param offset Position in the file of the first byte.
+     * @param length Bytes to write.
+     *
+     * @return Written bytes.
+     *
+     * @throws IOException If the response ends before `length` bytes.
+     */
+    private long _writeRange(Response r, FileChannel file, long offset, long length) throws IOException
+    {
+        Watchdog            watchdog = this._downloader.getWatchdog();
+        BufferPool          buffers  = this._downloader.getBufferPool();
+        ReadableByteChannel body     = r.getChannel();
+        long                position = offset;
+        long                end      = offset + length;
+        ByteBuffer          buffer   = buffers.borrow(Math.min(length, SegmentedDownload.MAX_BUFFER_SIZE));
+
+        AtomicLong progress = watchdog.watch(r);
+        try {
+            while(position < end) {
+                buffer.limit((int)Math.min(buffer.capacity(), end - position));
+
+                int n = body.read(buffer);
+                if(n < 0) {
+                    throw new EOFException("Connection closed after "+ (position - offset) +" of "+ length +" bytes");
+                }
+
+                if(n > 0) {
+                    progress.set(System.nanoTime());
+                    this._downloader.throttleBytes(this._url.getHost(), n);
+                }
+
+                buffer.flip();
+                while(buffer.hasRemaining()) {
+                    position += file.write(buffer, position);
+                }
+                buffer.clear();
+            }
+        } catch(IOException e) {
+            throw watchdog.getError(r, e, this._url.toString());
+        } finally {
+            watchdog.unwatch(r);
+            buffers.release(buffer);
+        }
+
+        return position - offset;
+    }
+}
@@ -0,0 +1,149 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.tabitha.Console;
+
+/**
+ * State file.
+ *
+ * Key/value pairs that are kept between runs, stored as a properties
+ * file in the `.dord` directory of the download path.
+ *
+ * It's safe to use from various download workers at the same time.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class StateFile
+{
+    /**
+     * File where the values are stored.
+     */
+    private File _file;
+
+    /**
+     * Stored values.
+     */
+    private ConcurrentHashMap<String, String> _values = new ConcurrentHashMap<>();
+
+    /**
+     * Whether the values changed since they were loaded or not.
+     */
+    private volatile boolean _changed = false;
+
+    /**
+     * Constructor.
+     *
+     * Loads the stored values, if any.
+     *
+     * @param path Download path.
+     * @param name State name.
+     */
+    public StateFile(File path, String name)
+    {
+        this._file = new File(new File(path, ".dord"), name +".properties");
+
+        if(!this._file.exists()) {
+            return;
+        }
+
+        try(Reader r = new FileReader(this._file)) {
+            Properties p = new Properties();
+            p.load(r);
+
+            for(String key : p.stringPropertyNames()) {
+                this._values.put(key, p.getProperty(key));
+            }
+        } catch(IOException e) {
+            Console.println("Couldn't read '"+ this._file.getAbsolutePath() +"', it will be ignored.");
+        }
+    }
+
+    /**
+     * Returns a value.
+     *
+     * @param key Value key.
+     *
+     * @return Stored value, `null` if there isn't one.
+     */
+    public String get(String key)
+    {
+        return this._values.get(key);
+    }
+
+    /**
+     * Stores a value.
+     *
+     * @param key   Value key.
+     * @param value Value, `null` removes it.
+     */
+    public void put(String key, String value)
+    {
+        if(value == null) {
+            this.remove(key);
+
+            return;
+        }
+
+        if(!value.equals(this._values.put(key, value))) {
+            this._changed = true;
+        }
+    }
+
+    /**
+     * Removes a value.
+     *
+     * @param key Value key.
+     */
+    public void remove(String key)
+    {
+        if(this._values.remove(key) != null) {
+            this._changed = true;
+        }
+    }
+
+    /**
+     * Saves the values to disk if they changed.
+     */
+    public synchronized void save()
+    {
+        if(!this._changed) {
+            return;
+        }
+
+        File parent = this._file.getParentFile();
+        if(
+            !parent.mkdirs() &&
+            !parent.isDirectory()
+        ) {
+            Console.println("Couldn't create '"+ parent.getAbsolutePath() +"'!");
+
+            return;
+        }
+
+        this._changed = false; // Values stored while saving are saved the next time.
+
+        Properties p = new Properties();
+        p.putAll(this._values);
+
+        try(Writer w = new FileWriter(this._file)) {
+            p.store(w, "DarkOrbit Resources Downloader state, don't edit.");
+        } catch(IOException e) {
+            this._changed = true;
+
+            Console.println("Couldn't save '"+ this._file.getAbsolutePath() +"'!");
+
+            if(Settings.debug) {
+                e.printStackTrace();
+            }
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.manulaiko.dord.launcher.downloader.transport.Response;
+
+/**
+ * Watchdog class.
+ *
+ * Aborts the responses that stop sending bytes for too long and, once
+ * the deadline of the run has passed, every response still being read.
+ *
+ * Aborting a response makes the thread reading it fail right away
+ * instead of waiting for the socket.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Watchdog
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long CHECK_INTERVAL = 100;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Nanoseconds a response can go without sending bytes, `0` means forever.
+     */
+    private long _idleTimeout;
+
+    /**
+     * `System.nanoTime()` of the deadline, `0` if there's none.
+     */
+    private volatile long _deadline = 0;
+
+    /**
+     * Responses being read and the time they last sent bytes.
+     */
+    private ConcurrentHashMap<Response, AtomicLong> _watched = new ConcurrentHashMap<>();
+
+    /**
+     * Responses aborted for being idle.
+     */
+    private Set<Response> _idle = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Timer that checks the responses, `null` until something is watched.
+     */
+    private volatile ScheduledExecutorService _timer;
+
+    /**
+     * Constructor.
+     *
+     * @param idleTimeout Milliseconds a response can go without sending bytes, `0` means forever.
+     */
+    public Watchdog(long idleTimeout)
+    {
+        this._idleTimeout = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+    }
+
+    /**
+     * Sets the deadline.
+     *
+     * @param millis Milliseconds from now.
+     */
+    public void setDeadline(long millis)
+    {
+        this._deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(millis);
+
+        this._start();
+    }
+
+    /**
+     * Returns whether the deadline has passed or not.
+     *
+     * @return `true` if the deadline has passed, `false` if it hasn't or there's none.
+     */
+    public boolean isExpired()
+    {
+        long deadline = this._deadline;
+
+        return deadline != 0 && System.nanoTime() - deadline >= 0;
+    }
+
+    /**
+     * Returns the deadline.
+     *
+     * @return `System.nanoTime()` at which the deadline passes, `0` if there's none.
+     */
+    public long getDeadline()
+    {
+        return this._deadline;
+    }
+
+    /**
+     * Caps a timeout to the time left until the deadline.
+     *
+     * @param timeout Timeout in milliseconds, `0` means forever.
+     *
+     * @return `timeout` or the milliseconds left until the deadline, whichever is shorter.
+     */
+    public long getTimeout(long timeout)
+    {
+        long deadline = this._deadline;
+        if(deadline == 0) {
+            return timeout;
+        }
+
+        long left = Math.max(1, TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime()));
+
+        return (timeout <= 0) ? left : Math.min(timeout, left);
+    }
+
+    /**
+     * Starts watching a response.
+     *
+     * @param r Response being read.
+     *
+     * @return Time it last sent bytes, the reader must set it to `System.nanoTime()` after each read.
+     */
+    public AtomicLong watch(Response r)
+    {
+        AtomicLong progress = new AtomicLong(System.nanoTime());
+
+        this._watched.put(r, progress);
+        if(this._timer == null) {
+            this._start();
+        }
+
+        return progress;
+    }
+
+    /**
+     * Stops watching a response.
+     *
+     * @param r Response being read.
+     */
+    public void unwatch(Response r)
+    {
+        this._watched.remove(r);
+        this._idle.remove(r);
+    }
+
+    /**
+     * Returns the error to report for a failed read.
+     *
+     * @param r    Response being read.
+     * @param e    Error thrown while reading it.
+     * @param path Requested file.
+     *
+     * @return Timeout or deadline error if the response was aborted, `e` otherwise.
+     */
+    public IOException getError(Response r, IOException e, String path)
+    {
+        if(this._idle.contains(r)) {
+            return new SocketTimeoutException("No bytes received in "+ TimeUnit.NANOSECONDS.toSeconds(this._idleTimeout) +" seconds");
+        }
+
+        if(this.isExpired()) {
+            return new DeadlineExceededException(path);
+        }
+
+        return e;
+    }
+
+    /**
+     * Stops the watchdog.
+     */
+    public synchronized void close()
+    {
+        if(this._timer != null) {
+            this._timer.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts the timer if it isn't running yet.
+     */
+    private synchronized void _start()
+    {
+        if(this._timer != null) {
+            return;
+        }
+
+        this._timer = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("watchdog").daemon().factory()
+        );
+        this._timer.scheduleWithFixedDelay(
+                this::_check,
+                Watchdog.CHECK_INTERVAL,
+                Watchdog.CHECK_INTERVAL,
+                TimeUnit.MILLISECONDS
+        );
+    }
+
+    /**
+     * Aborts the idle responses, or all of them if the deadline has passed.
+     *
+     * Responses are aborted on their own thread, closing a connection can
+     * block until the thread writing to it is done.
+     */
+    private void _check()
+    {
+        boolean expired = this.isExpired();
+        long    now     = System.nanoTime();
+
+        this._watched.forEach((r, progress) -> {
+            if(
+                !expired &&
+                (this._idleTimeout <= 0 || now - progress.get() < this._idleTimeout)
+            ) {
+                return;
+            }
+
+            if(!expired) {
+                this._idle.add(r);
+            }
+
+            this._watched.remove(r);
+            Thread.startVirtualThread(r::abort);
+        });
+    }
+}
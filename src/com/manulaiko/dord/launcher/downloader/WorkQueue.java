@@ -0,0 +1,436 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.util.Iterator;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToLongFunction;
+
+import com.manulaiko.dord.launcher.Settings;
+import com.manulaiko.dord.launcher.downloader.scheduling.FairPolicy;
+import com.manulaiko.dord.launcher.downloader.scheduling.FifoPolicy;
+import com.manulaiko.dord.launcher.downloader.scheduling.PriorityPolicy;
+import com.manulaiko.dord.launcher.downloader.scheduling.SchedulingPolicy;
+import com.manulaiko.dord.launcher.downloader.scheduling.ShortestJobFirstPolicy;
+import com.manulaiko.dord.launcher.downloader.scheduling.Task;
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Work queue.
+ *
+ * Shared queue of downloads. Several categories can submit their files
+ * at the same time, they're all downloaded by the same workers (or
+ * virtual threads) while each category keeps its own stats.
+ *
+ * Which queued file downloads next is decided by the scheduling policy.
+ *
+ * Policies that need the size of the files get it from the previous run
+ * or the local copy. Files without one are probed with a HEAD request on
+ * their own thread, so the files behind them are queued meanwhile.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class WorkQueue
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int SCHEDULING_WINDOW = 1024;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Downloader of the files.
+     */
+    private FileDownloader _downloader;
+
+    /**
+     * Executor that runs the downloads.
+     */
+    private ExecutorService _pool;
+
+    /**
+     * Free slots in the queue.
+     *
+     * Submitting blocks while the queue is full, so the files of a
+     * manifest aren't read further ahead than needed.
+     */
+    private Semaphore _slots;
+
+    /**
+     * Downloads that can run at the same time.
+     */
+    private Semaphore _running;
+
+    /**
+     * Decides which queued download runs next.
+     *
+     * Calls are synchronized on it.
+     */
+    private SchedulingPolicy _policy;
+
+    /**
+     * Whether the policy needs the expected size of the files or not.
+     */
+    private boolean _sized = false;
+
+    /**
+     * Amount of queued downloads, used to keep the queue order.
+     */
+    private AtomicLong _sequence = new AtomicLong();
+
+    /**
+     * Executor that probes the size of the files, `null` if the policy doesn't need it.
+     */
+    private ExecutorService _probes;
+
+    /**
+     * Probes that can run at the same time.
+     */
+    private Semaphore _probing = new Semaphore(Settings.connectionsPerHost);
+
+    /**
+     * Constructor.
+     *
+     * Uses a virtual thread per file or a pool of `workers` threads.
+     * Virtual threads are limited to `connections` per mirror, the
+     * connections to each host are limited by the downloader.
+     *
+     * Policies other than `fifo` keep more files queued, so they have
+     * something to choose from.
+     *
+     * @param downloader Downloader of the files.
+     */
+    public WorkQueue(FileDownloader downloader)
+    {
+        int parallelism;
+
+        if(Settings.virtualThreads) {
+            this._pool  = Executors.newVirtualThreadPerTaskExecutor();
+            parallelism = Settings.connectionsPerHost * downloader.getMirrors().size();
+        } else {
+            this._pool  = Executors.newFixedThreadPool(Settings.workers);
+            parallelism = Settings.workers;
+        }
+
+        this._downloader = downloader;
+        this._policy     = this._createPolicy(Settings.schedule);
+
+        if(this._sized) {
+            this._probes = Executors.newVirtualThreadPerTaskExecutor();
+        }
+        this._running    = new Semaphore(parallelism, true);
+        this._slots      = new Semaphore(
+                (this._policy instanceof FifoPolicy) ? 2 * parallelism : Math.max(2 * parallelism, WorkQueue.SCHEDULING_WINDOW),
+                true
+        );
+    }
+
+    /**
+     * Creates the scheduling policy.
+     *
+     * @param name Policy name.
+     *
+     * @return Policy for `name`, `FifoPolicy` if it's unknown.
+     */
+    private SchedulingPolicy _createPolicy(String name)
+    {
+        switch(name)
+        {
+            case "sjf":
+                this._sized = true;
+
+                return new ShortestJobFirstPolicy();
+
+            case "fair":
+                return new FairPolicy();
+
+            case "priority":
+                return new PriorityPolicy(Settings.priorities.split(","));
+
+            case "fifo":
+                return new FifoPolicy();
+
+            default:
+                Console.println("Unknown schedule '"+ name +"', using fifo instead.");
+
+                return new FifoPolicy();
+        }
+    }
+
+    /**
+     * Queues the files of a category.
+     *
+     * Files are queued as `files` returns them, so it can still be producing
+     * them (i.e. parsing a manifest) while the first ones download.
+     *
+     * @param files    Files to download from remote host.
+     * @param category Category the files belong to.
+     *
+     * @return The category, to wait for its downloads.
+     *
+     * @throws InterruptedException If the thread is interrupted while the queue is full.
+     */
+    public Category submit(Iterator<String> files, String category) throws InterruptedException
+    {
+        return this.submit(files, category, (path) -> this._downloader.download(path, category));
+    }
+
+    /**
+     * Queues the files of a category.
+     *
+     * @param files    Files to download from remote host.
+     * @param category Category the files belong to.
+     * @param download Downloads a file and returns the downloaded bytes.
+     *
+     * @return The category, to wait for its downloads.
+     *
+     * @throws InterruptedException If the thread is interrupted while the queue is full.
+     */
+    public Category submit(Iterator<String> files, String category, ToLongFunction<String> download) throws InterruptedException
+    {
+        Category c = new Category(category);
+
+        while(files.hasNext()) {
+            String path     = files.next();
+            long   sequence = this._sequence.getAndIncrement();
+            long   size     = this._sized ? this._downloader.getKnownSize(path) : -1;
+
+            this._slots.acquire();
+            c.add();
+
+            Runnable run = () -> {
+                long bytes = 0;
+                try {
+                    bytes = download.applyAsLong(path);
+                } finally {
+                    this._slots.release();
+                    c.done(bytes);
+                }
+            };
+
+            if(
+                !this._sized ||
+                size >= 0
+            ) {
+                this._queue(new Task(path, category, sequence, size, run));
+
+                continue;
+            }
+
+            this._probes.execute(() -> this._queue(new Task(path, category, sequence, this._probe(path), run)));
+        }
+
+        c.done(0);
+
+        return c;
+    }
+
+    /**
+     * Adds a download to the policy.
+     *
+     * @param task Download to add.
+     */
+    private void _queue(Task task)
+    {
+        synchronized(this._policy) {
+            this._policy.add(task);
+        }
+
+        this._pool.execute(this::_runNext);
+    }
+
+    /**
+     * Asks the server for the size of a file.
+     *
+     * @param path Path on remote host to file.
+     *
+     * @return Size of the file, `-1` if it's unknown.
+     */
+    private long _probe(String path)
+    {
+        try {
+            this._probing.acquire();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return -1;
+        }
+
+        try {
+            return this._downloader.probe(path);
+        } finally {
+            this._probing.release();
+        }
+    }
+
+    /**
+     * Runs the download chosen by the policy.
+     *
+     * Each call runs one of the queued downloads, not necessarily
+     * the one queued with it.
+     */
+    private void _runNext()
+    {
+        try {
+            this._running.acquire();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            return;
+        }
+
+        try {
+            Task task;
+            synchronized(this._policy) {
+                task = this._policy.poll();
+            }
+
+            if(task != null) {
+                task.run();
+            }
+        } finally {
+            this._running.release();
+        }
+    }
+
+    /**
+     * Waits for the queued downloads and stops the workers.
+     */
+    public void close()
+    {
+        if(this._probes != null) {
+            this._probes.close(); // Probed files are still queued.
+        }
+
+        this._pool.shutdown();
+
+        try {
+            this._pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch(InterruptedException e) {
+            this._pool.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Category class.
+     *
+     * Keeps track of the downloads of a category.
+     */
+    public static class Category
+    {
+        /**
+         * Category name.
+         */
+        private String _name;
+
+        /**
+         * Time the first file was queued.
+         */
+        private long _start = System.currentTimeMillis();
+
+        /**
+         * Time the last download finished.
+         */
+        private volatile long _end;
+
+        /**
+         * Downloaded bytes.
+         */
+        private LongAdder _bytes = new LongAdder();
+
+        /**
+         * Unfinished downloads, plus one while files are being queued.
+         */
+        private AtomicInteger _pending = new AtomicInteger(1);
+
+        /**
+         * Released once all downloads have finished.
+         */
+        private CountDownLatch _finished = new CountDownLatch(1);
+
+        /**
+         * Constructor.
+         *
+         * @param name Category name.
+         */
+        Category(String name)
+        {
+            this._name = name;
+        }
+
+        /**
+         * Waits until all downloads have finished.
+         *
+         * @return Downloaded bytes.
+         *
+         * @throws InterruptedException If the thread is interrupted while waiting.
+         */
+        public long await() throws InterruptedException
+        {
+            this._finished.await();
+
+            return this._bytes.sum();
+        }
+
+        /**
+         * Returns category name.
+         *
+         * @return Category name.
+         */
+        public String getName()
+        {
+            return this._name;
+        }
+
+        /**
+         * Returns the time the first file was queued.
+         *
+         * @return Start time, in milliseconds.
+         */
+        public long getStart()
+        {
+            return this._start;
+        }
+
+        /**
+         * Returns the time the last download finished.
+         *
+         * @return End time, in milliseconds.
+         */
+        public long getEnd()
+        {
+            return this._end;
+        }
+
+        /**
+         * Adds a download.
+         */
+        void add()
+        {
+            this._pending.incrementAndGet();
+        }
+
+        /**
+         * Finishes a download, or the queueing of the files.
+         *
+         * @param bytes Downloaded bytes.
+         */
+        void done(long bytes)
+        {
+            this._bytes.add(bytes);
+
+            if(this._pending.decrementAndGet() == 0) {
+                this._end = System.currentTimeMillis();
+                this._finished.countDown();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.manulaiko.dord.launcher.downloader.scheduling;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+
+/**
+ * Fair policy.
+ *
+ * Takes a download from each category in turn, so a category with
+ * lots of files doesn't make the others wait.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class FairPolicy implements SchedulingPolicy
+{
+    /**
+     * Queued downloads of each category.
+     */
+    private HashMap<String, ArrayDeque<Task>> _tasks = new HashMap<>();
+
+    /**
+     * Categories with queued downloads, the next one to run first.
+     */
+    private ArrayDeque<String> _turns = new ArrayDeque<>();
+
+    /**
+     * Queues a download.
+     *
+     * @param task Download to queue.
+     */
+    @Override
+    public void add(Task task)
+    {
+        ArrayDeque<Task> tasks = this._tasks.computeIfAbsent(task.getCategory(), (c) -> new ArrayDeque<>());
+
+        if(tasks.isEmpty()) {
+            this._turns.add(task.getCategory());
+        }
+
+        tasks.add(task);
+    }
+
+    /**
+     * Takes the oldest download of the category whose turn it is.
+     *
+     * @return Next download, `null` if there are none.
+     */
+    @Override
+    public Task poll()
+    {
+        String category = this._turns.poll();
+        if(category == null) {
+            return null;
+        }
+
+        ArrayDeque<Task> tasks = this._tasks.get(category);
+        Task             task  = tasks.poll();
+
+        if(!tasks.isEmpty()) {
+            this._turns.add(category);
+        }
+
+        return task;
+    }
+}
@@ -0,0 +1,41 @@
+package com.manulaiko.dord.launcher.downloader.scheduling;
+
+import java.util.ArrayDeque;
+
+/**
+ * FIFO policy.
+ *
+ * Runs the downloads in the order they were queued, which is
+ * the order of the manifests.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class FifoPolicy implements SchedulingPolicy
+{
+    /**
+     * Queued downloads.
+     */
+    private ArrayDeque<Task> _tasks = new ArrayDeque<>();
+
+    /**
+     * Queues a download.
+     *
+     * @param task Download to queue.
+     */
+    @Override
+    public void add(Task task)
+    {
+        this._tasks.add(task);
+    }
+
+    /**
+     * Takes the oldest download.
+     *
+     * @return Next download, `null` if there are none.
+     */
+    @Override
+    public Task poll()
+    {
+        return this._tasks.poll();
+    }
+}
@@ -0,0 +1,77 @@
+package com.manulaiko.dord.launcher.downloader.scheduling;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Priority policy.
+ *
+ * Runs the downloads of the categories in the given order. Downloads of
+ * the same category, or of categories that aren't listed, run in the
+ * order they were queued after the listed ones.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class PriorityPolicy implements SchedulingPolicy
+{
+    /**
+     * Categories, the most important first.
+     */
+    private List<String> _categories;
+
+    /**
+     * Queued downloads, the most important first.
+     */
+    private PriorityQueue<Task> _tasks = new PriorityQueue<>(
+            Comparator.comparingInt((Task t) -> this._getPriority(t.getCategory()))
+                      .thenComparingLong(Task::getSequence)
+    );
+
+    /**
+     * Constructor.
+     *
+     * @param categories Categories, the most important first.
+     */
+    public PriorityPolicy(String[] categories)
+    {
+        this._categories = Arrays.asList(categories);
+    }
+
+    /**
+     * Queues a download.
+     *
+     * @param task Download to queue.
+     */
+    @Override
+    public void add(Task task)
+    {
+        this._tasks.add(task);
+    }
+
+    /**
+     * Takes the most important download.
+     *
+     * @return Next download, `null` if there are none.
+     */
+    @Override
+    public Task poll()
+    {
+        return this._tasks.poll();
+    }
+
+    /**
+     * Returns the priority of a category.
+     *
+     * @param category Category name.
+     *
+     * @return Position of the category in the list, lower runs first.
+     */
+    private int _getPriority(String category)
+    {
+        int priority = this._categories.indexOf(category);
+
+        return (priority < 0) ? this._categories.size() : priority;
+    }
+}
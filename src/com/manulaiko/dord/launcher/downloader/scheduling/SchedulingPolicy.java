@@ -0,0 +1,28 @@
+package com.manulaiko.dord.launcher.downloader.scheduling;
+
+/**
+ * Scheduling policy interface.
+ *
+ * Decides which of the queued downloads runs next.
+ *
+ * Implementations don't need to be thread safe, the work queue
+ * synchronizes the calls.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public interface SchedulingPolicy
+{
+    /**
+     * Queues a download.
+     *
+     * @param task Download to queue.
+     */
+    void add(Task task);
+
+    /**
+     * Takes the download that must run next.
+     *
+     * @return Next download, `null` if there are none.
+     */
+    Task poll();
+}
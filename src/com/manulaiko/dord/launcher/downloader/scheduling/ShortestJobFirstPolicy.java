@@ -0,0 +1,57 @@
+package com.manulaiko.dord.launcher.downloader.scheduling;
+
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/**
+ * Shortest job first policy.
+ *
+ * Runs the smallest files first, so more files are complete sooner.
+ * Files of unknown size run last, in the order they were queued.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ShortestJobFirstPolicy implements SchedulingPolicy
+{
+    /**
+     * Queued downloads, smallest first.
+     */
+    private PriorityQueue<Task> _tasks = new PriorityQueue<>(
+            Comparator.comparingLong(ShortestJobFirstPolicy::_getSize)
+                      .thenComparingLong(Task::getSequence)
+    );
+
+    /**
+     * Queues a download.
+     *
+     * @param task Download to queue.
+     */
+    @Override
+    public void add(Task task)
+    {
+        this._tasks.add(task);
+    }
+
+    /**
+     * Takes the smallest download.
+     *
+     * @return Next download, `null` if there are none.
+     */
+    @Override
+    public Task poll()
+    {
+        return this._tasks.poll();
+    }
+
+    /**
+     * Returns the size a download is sorted by.
+     *
+     * @param task Queued download.
+     *
+     * @return Expected size of the file, the largest possible if it's unknown.
+     */
+    private static long _getSize(Task task)
+    {
+        return (task.getSize() < 0) ? Long.MAX_VALUE : task.getSize();
+    }
+}
@@ -0,0 +1,103 @@
+package com.manulaiko.dord.launcher.downloader.scheduling;
+
+/**
+ * Task class.
+ *
+ * A queued download.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Task implements Runnable
+{
+    /**
+     * Path on remote host to file.
+     */
+    private String _path;
+
+    /**
+     * Category the file belongs to.
+     */
+    private String _category;
+
+    /**
+     * Position of the task in the order it was queued.
+     */
+    private long _sequence;
+
+    /**
+     * Expected size of the file, `-1` if it's unknown.
+     */
+    private long _size;
+
+    /**
+     * Downloads the file.
+     */
+    private Runnable _download;
+
+    /**
+     * Constructor.
+     *
+     * @param path     Path on remote host to file.
+     * @param category Category the file belongs to.
+     * @param sequence Position of the task in the order it was queued.
+     * @param size     Expected size of the file, `-1` if it's unknown.
+     * @param download Downloads the file.
+     */
+    public Task(String path, String category, long sequence, long size, Runnable download)
+    {
+        this._path     = path;
+        this._category = category;
+        this._sequence = sequence;
+        this._size     = size;
+        this._download = download;
+    }
+
+    /**
+     * Downloads the file.
+     */
+    @Override
+    public void run()
+    {
+        this._download.run();
+    }
+
+    /**
+     * Returns path on remote host to file.
+     *
+     * @return Path on remote host to file.
+     */
+    public String getPath()
+    {
+        return this._path;
+    }
+
+    /**
+     * Returns category the file belongs to.
+     *
+     * @return Category the file belongs to.
+     */
+    public String getCategory()
+    {
+        return this._category;
+    }
+
+    /**
+     * Returns position of the task in the order it was queued.
+     *
+     * @return Position of the task in the order it was queued.
+     */
+    public long getSequence()
+    {
+        return this._sequence;
+    }
+
+    /**
+     * Returns expected size of the file.
+     *
+     * @return Expected size of the file, `-1` if it's unknown.
+     */
+    public long getSize()
+    {
+        return this._size;
+    }
+}
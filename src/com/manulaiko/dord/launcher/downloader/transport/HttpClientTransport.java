@@ -0,0 +1,137 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ProxySelector;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * HttpClient transport.
+ *
+ * Sends all requests through a single shared `HttpClient` so connections
+ * are kept alive and reused between files. HTTP/2 is used when the host
+ * allows it, otherwise it falls back to HTTP/1.1 keep-alive.
+ *
+ * A client's proxy can't change, so requests through a proxy use a
+ * client of their own for each proxy.
+ *
+ * The amount of requests in flight is bounded by the connections to
+ * each host, the pool itself is left to the JDK's settings.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class HttpClientTransport implements Transport
+{
+    /**
+     * Shared clients, indexed by the proxy they use.
+     */
+    private ConcurrentHashMap<Proxy, HttpClient> _clients = new ConcurrentHashMap<>();
+
+    /**
+     * Milliseconds to wait for a connection, `0` means forever.
+     */
+    private int _connectTimeout;
+
+    /**
+     * Constructor.
+     *
+     * @param connectTimeout Milliseconds to wait for a connection, `0` means forever.
+     */
+    public HttpClientTransport(int connectTimeout)
+    {
+        this._connectTimeout = connectTimeout;
+    }
+
+    /**
+     * Returns the client for a proxy.
+     *
+     * @param proxy Proxy to use, `Proxy.NO_PROXY` to connect directly.
+     *
+     * @return Shared client for `proxy`.
+     */
+    private HttpClient _getClient(Proxy proxy)
+    {
+        return this._clients.computeIfAbsent(proxy, (p) -> {
+            HttpClient.Builder builder = HttpClient.newBuilder()
+                                                   .version(HttpClient.Version.HTTP_2)
+                                                   .followRedirects(HttpClient.Redirect.NORMAL)
+                                                   .proxy(
+                                                           (p.type() == Proxy.Type.DIRECT)
+                                                               ? HttpClient.Builder.NO_PROXY
+                                                               : ProxySelector.of((InetSocketAddress)p.address())
+                                                   );
+
+            if(this._connectTimeout > 0) {
+                builder.connectTimeout(Duration.ofMillis(this._connectTimeout));
+            }
+
+            return builder.build();
+        });
+    }
+
+    /**
+     * Sends a request.
+     *
+     * The body isn't buffered, it's streamed as it arrives.
+     *
+     * @param request Request to send.
+     *
+     * @return Server response.
+     *
+     * @throws IOException If the request couldn't be sent.
+     */
+    @Override
+    public Response send(Request request) throws IOException
+    {
+        HttpRequest.Builder builder;
+        try {
+            builder = HttpRequest.newBuilder(request.getUrl().toURI())
+                                 .method(request.getMethod(), HttpRequest.BodyPublishers.noBody());
+        } catch(URISyntaxException e) {
+            throw new IOException("Invalid URL "+ request.getUrl(), e);
+        }
+
+        request.getHeaders().forEach(builder::header);
+        if(request.getTimeout() > 0) {
+            builder.timeout(Duration.ofMillis(request.getTimeout()));
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = this._getClient(request.getProxy()).send(builder.build(), HttpResponse.BodyHandlers.ofInputStream());
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+
+            throw new InterruptedIOException("Interrupted while requesting "+ request.getUrl()); // Not retried, unlike network errors.
+        }
+
+        Response r = new Response(response.statusCode(), response.body());
+        for(Map.Entry<String, List<String>> header : response.headers().map().entrySet()) {
+            if(!header.getValue().isEmpty()) {
+                r.setHeader(header.getKey(), header.getValue().get(0));
+            }
+        }
+
+        return r;
+    }
+
+    /**
+     * Closes the transport.
+     */
+    @Override
+    public void close()
+    {
+        this._clients.values().forEach(HttpClient::close);
+        this._clients.clear();
+    }
+}
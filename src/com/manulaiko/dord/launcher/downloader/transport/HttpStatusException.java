@@ -0,0 +1,50 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.IOException;
+import java.net.URL;
+
+/**
+ * HTTP status exception.
+ *
+ * Thrown when the server answers with an unexpected status code.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class HttpStatusException extends IOException
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final long serialVersionUID = 1L;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Status code.
+     */
+    private int _status;
+
+    /**
+     * Constructor.
+     *
+     * @param url    Requested URL.
+     * @param status Status code.
+     */
+    public HttpStatusException(URL url, int status)
+    {
+        super("Server returned HTTP "+ status +" for "+ url);
+
+        this._status = status;
+    }
+
+    /**
+     * Returns status code.
+     *
+     * @return Status code.
+     */
+    public int getStatus()
+    {
+        return this._status;
+    }
+}
@@ -0,0 +1,816 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Pipelined connection.
+ *
+ * A keep-alive connection that accepts new requests while the responses
+ * of the previous ones are still being read. Responses are read in the
+ * same order the requests were written, so each exchange waits until the
+ * body of the previous one has been closed.
+ *
+ * An exchange that gives up waiting for its response doesn't close the
+ * connection: it's left in the queue and the next exchange skips its
+ * response once it arrives. Only if nobody is waiting behind it the
+ * connection is closed.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+class PipelinedConnection
+{
+    /**
+     * Host this connection belongs to.
+     */
+    private PipelinedHost _host;
+
+    /**
+     * Socket channel.
+     */
+    private SocketChannel _channel;
+
+    /**
+     * Selector used to wait for incoming bytes.
+     */
+    private Selector _readSelector;
+
+    /**
+     * Selector used to wait for room in the send buffer.
+     */
+    private Selector _writeSelector;
+
+    /**
+     * Received bytes, always in read mode.
+     */
+    private ByteBuffer _buffer = ByteBuffer.allocate(16384);
+
+    /**
+     * Milliseconds to wait for the socket, `0` means forever.
+     */
+    private int _timeout;
+
+    /**
+     * Sent exchanges waiting for their response.
+     */
+    private ArrayDeque<Exchange> _exchanges = new ArrayDeque<>();
+
+    /**
+     * Amount of exchanges sent or about to be sent and not finished yet.
+     */
+    private AtomicInteger _pending = new AtomicInteger(0);
+
+    /**
+     * Whether the connection is closed or not.
+     */
+    private volatile boolean _closed = false;
+
+    /**
+     * Whether new requests can be sent through this connection or not.
+     */
+    private volatile boolean _reusable = true;
+
+    /**
+     * Guards the queue of exchanges and the writes.
+     *
+     * A lock instead of `synchronized`, so virtual threads waiting
+     * for their turn don't pin their carrier.
+     */
+    private ReentrantLock _lock = new ReentrantLock();
+
+    /**
+     * Signalled when the head of the queue changes.
+     */
+    private Condition _turn = this._lock.newCondition();
+
+    /**
+     * Amount of responses read from this connection.
+     */
+    private int _responses = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param host           Host this connection belongs to.
+     * @param address        Address to connect to.
+     * @param connectTimeout Milliseconds to wait for the connection, `0` means forever.
+     * @param timeout        Milliseconds to wait for the socket, `0` means forever.
+     *
+     * @throws IOException If the connection couldn't be opened.
+     */
+    PipelinedConnection(PipelinedHost host, InetSocketAddress address, int connectTimeout, int timeout) throws IOException
+    {
+        this._host    = host;
+        this._timeout = timeout;
+        this._channel = SocketChannel.open();
+
+        try {
+            this._channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            this._channel.configureBlocking(false);
+
+            this._readSelector  = Selector.open();
+            this._writeSelector = Selector.open();
+
+            this._channel.register(this._readSelector, SelectionKey.OP_READ);
+            this._channel.register(this._writeSelector, SelectionKey.OP_WRITE);
+
+            if(!this._channel.connect(address)) {
+                Selector connect = Selector.open();
+                try {
+                    this._channel.register(connect, SelectionKey.OP_CONNECT);
+                    if(connect.select(connectTimeout) == 0) {
+                        throw new SocketTimeoutException("Connect timed out to "+ address);
+                    }
+
+                    this._channel.finishConnect();
+                } finally {
+                    connect.close();
+                }
+            }
+        } catch(IOException e) {
+            this._closeChannel();
+
+            throw e;
+        }
+
+        this._buffer.flip();
+    }
+
+    /**
+     * Returns amount of requests waiting for their response.
+     *
+     * Includes the ones reserved but not written yet.
+     *
+     * @return Amount of requests waiting for their response.
+     */
+    int pending()
+    {
+        return this._pending.get();
+    }
+
+    /**
+     * Returns whether new requests can be sent through this connection or not.
+     *
+     * @return Whether new requests can be sent through this connection or not.
+     */
+    boolean isUsable()
+    {
+        return !this._closed && this._reusable;
+    }
+
+    /**
+     * Reserves room for a request that's about to be written.
+     */
+    void reserve()
+    {
+        this._pending.incrementAndGet();
+    }
+
+    /**
+     * Writes a request.
+     *
+     * Room for it must have been reserved with `reserve`.
+     *
+     * @param exchange Exchange to send.
+     *
+     * @return `true` if the request was written, `false` if this connection can't take it.
+     */
+    boolean enqueue(Exchange exchange)
+    {
+        this._lock.lock();
+        try {
+            if(!this.isUsable()) {
+                this._pending.decrementAndGet();
+
+                return false;
+            }
+
+            ByteBuffer request = ByteBuffer.wrap(exchange.request);
+            while(request.hasRemaining()) {
+                if(this._channel.write(request) > 0) {
+                    continue;
+                }
+
+                if(this._writeSelector.select(this._timeout) == 0) {
+                    throw new SocketTimeoutException("Write timed out");
+                }
+                this._writeSelector.selectedKeys().clear();
+            }
+
+            this._exchanges.add(exchange);
+
+            return true;
+        } catch(IOException | ClosedSelectorException e) {
+            this._pending.decrementAndGet();
+        } finally {
+            this._lock.unlock();
+        }
+
+        this._fail();
+
+        return false;
+    }
+
+    /**
+     * Waits for the response of an exchange.
+     *
+     * If the response doesn't start in time, only this exchange gives up:
+     * its response is skipped by the next one.
+     *
+     * @param exchange Exchange sent through `enqueue`.
+     *
+     * @return Server response, `null` if the connection was closed before
+     *         the response started and the request must be sent again.
+     *
+     * @throws IOException If the response couldn't be read.
+     */
+    Response receive(Exchange exchange) throws IOException
+    {
+        Exchange abandoned;
+        while((abandoned = this._await(exchange)) != null) {
+            this._drain(abandoned);
+        }
+
+        if(exchange.failed) {
+            return null;
+        }
+
+        // This exchange is at the head of the queue, so it owns the read side.
+        try {
+            if(!this._readHead(exchange)) {
+                return null;
+            }
+        } catch(SocketTimeoutException e) {
+            this._abandon(exchange);
+
+            throw e;
+        } catch(IOException e) {
+            this._fail();
+
+            throw e;
+        }
+
+        ResponseParser parser = exchange.parser;
+        Response       r      = new Response(parser.getStatus(), new Body(parser, exchange));
+
+        r.setAbort(this::close);
+        for(String[] header : parser.getHeaders()) {
+            r.setHeader(header[0], header[1]);
+        }
+
+        return r;
+    }
+
+    /**
+     * Closes the connection.
+     */
+    void close()
+    {
+        this._fail();
+    }
+
+    /**
+     * Waits until an exchange is at the head of the queue.
+     *
+     * Its response timeout starts once it is.
+     *
+     * @param exchange Exchange to wait for.
+     *
+     * @return Abandoned exchange at the head of the queue whose response
+     *         must be skipped first, `null` once it's the exchange's turn
+     *         or the connection was closed.
+     *
+     * @throws InterruptedIOException If the thread was interrupted.
+     */
+    private Exchange _await(Exchange exchange) throws InterruptedIOException
+    {
+        try {
+            this._lock.lock();
+            try {
+                while(!exchange.failed) {
+                    Exchange head = this._exchanges.peek();
+                    if(head == exchange) {
+                        exchange.start();
+
+                        return null;
+                    }
+
+                    if(
+                        head != null &&
+                        head.abandoned &&
+                        !head.draining
+                    ) {
+                        head.draining = true;
+
+                        return head;
+                    }
+
+                    this._turn.await();
+                }
+
+                return null;
+            } finally {
+                this._lock.unlock();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            this._abandon(exchange);
+
+            throw new InterruptedIOException("Interrupted while waiting for the response");
+        }
+    }
+
+    /**
+     * Reads the head of the response of the exchange at the head of the queue.
+     *
+     * Abandoned exchanges wait for it as long as for any other read.
+     *
+     * @param exchange Exchange at the head of the queue.
+     *
+     * @return `true` if the head was read, `false` if the connection was closed
+     *         before the response started.
+     *
+     * @throws IOException If the head couldn't be read.
+     */
+    private boolean _readHead(Exchange exchange) throws IOException
+    {
+        ResponseParser parser = exchange.parser;
+
+        while(!parser.parseHead(this._buffer)) {
+            long timeout = exchange.abandoned ? this._timeout : exchange.getTimeout();
+            if(this._fill(timeout)) {
+                continue;
+            }
+
+            if(parser.hasStarted()) {
+                throw new EOFException("Connection closed in the middle of a response");
+            }
+
+            // Server closed the connection without answering, everything queued must be sent again.
+            // If it already answered something through it, it just doesn't like pipelined requests.
+            if(this._responses > 0) {
+                this._host.disablePipelining();
+            }
+            this._fail();
+
+            return false;
+        }
+
+        this._responses++;
+        if(!parser.isKeepAlive()) {
+            this._reusable = false;
+
+            if(this._responses == 1) {
+                this._host.disableKeepAlive();
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Skips the response of an abandoned exchange.
+     *
+     * If it can't be skipped the connection is closed, so the exchanges
+     * queued behind it are sent again.
+     *
+     * @param exchange Abandoned exchange at the head of the queue.
+     */
+    private void _drain(Exchange exchange)
+    {
+        try {
+            if(this._readHead(exchange)) {
+                new Body(exchange.parser, exchange).close();
+            }
+        } catch(IOException e) {
+            this._fail();
+        }
+    }
+
+    /**
+     * Gives up on the response of an exchange.
+     *
+     * It stays in the queue so its response is skipped by the next exchange.
+     *
+     * @param exchange Exchange to abandon.
+     */
+    private void _abandon(Exchange exchange)
+    {
+        boolean close;
+
+        this._lock.lock();
+        try {
+            exchange.abandoned = true;
+
+            close = this._isAbandoned();
+            this._turn.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+
+        if(close) {
+            this._fail();
+        }
+    }
+
+    /**
+     * Returns whether nobody is waiting for a response from this connection.
+     *
+     * In that case nobody would skip the abandoned responses, so the
+     * connection must be closed instead.
+     *
+     * @return Whether all queued exchanges were abandoned or not.
+     */
+    private boolean _isAbandoned()
+    {
+        if(this._exchanges.isEmpty()) {
+            return false;
+        }
+
+        for(Exchange e : this._exchanges) {
+            if(!e.abandoned) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads more bytes from the socket.
+     *
+     * @param timeout Milliseconds to wait for the bytes, `0` means forever.
+     *
+     * @return `true` if bytes were read, `false` if the server closed the connection.
+     *
+     * @throws IOException If the socket couldn't be read.
+     */
+    private boolean _fill(long timeout) throws IOException
+    {
+        this._buffer.compact();
+
+        try {
+            while(true) {
+                int n = this._channel.read(this._buffer);
+                if(n != 0) {
+                    return n > 0;
+                }
+
+                if(this._readSelector.select(timeout) == 0) {
+                    throw new SocketTimeoutException("Read timed out");
+                }
+                this._readSelector.selectedKeys().clear();
+            }
+        } catch(ClosedSelectorException e) {
+            throw new SocketException("Connection aborted", e);
+        } finally {
+            this._buffer.flip();
+        }
+    }
+
+    /**
+     * Finishes an exchange once its body has been read.
+     *
+     * @param exchange Finished exchange.
+     */
+    private void _complete(Exchange exchange)
+    {
+        this._lock.lock();
+        try {
+            if(this._exchanges.remove(exchange)) {
+                this._pending.decrementAndGet();
+            }
+
+            if(
+                !this._reusable ||
+                this._isAbandoned()
+            ) {
+                this._close();
+            }
+
+            this._turn.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+
+        this._host.released();
+    }
+
+    /**
+     * Closes the connection after an error.
+     *
+     * Queued exchanges are flagged so they're sent again.
+     */
+    private void _fail()
+    {
+        this._lock.lock();
+        try {
+            this._close();
+            this._turn.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+
+        this._host.released();
+    }
+
+    /**
+     * Closes the connection and flags queued exchanges.
+     */
+    private void _close()
+    {
+        this._closed = true;
+
+        for(Exchange e : this._exchanges) {
+            e.failed = true;
+        }
+        this._exchanges.clear();
+
+        this._closeChannel();
+    }
+
+    /**
+     * Closes the channel and its selectors.
+     */
+    private void _closeChannel()
+    {
+        try {
+            this._channel.close();
+
+            if(this._readSelector != null) {
+                this._readSelector.close();
+            }
+            if(this._writeSelector != null) {
+                this._writeSelector.close();
+            }
+        } catch(IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Exchange class.
+     *
+     * A request written to the connection.
+     */
+    static class Exchange
+    {
+        /**
+         * Encoded request.
+         */
+        byte[] request;
+
+        /**
+         * Whether it's a HEAD request or not.
+         */
+        boolean head;
+
+        /**
+         * Milliseconds to wait for the response, `0` means forever.
+         */
+        long timeout;
+
+        /**
+         * `System.nanoTime()` after which the response is late, `0` means never.
+         */
+        long deadline = 0;
+
+        /**
+         * Parser of the response.
+         */
+        ResponseParser parser;
+
+        /**
+         * Whether the connection was closed before its response.
+         */
+        volatile boolean failed = false;
+
+        /**
+         * Whether it gave up waiting for its response.
+         */
+        boolean abandoned = false;
+
+        /**
+         * Whether its abandoned response is being skipped.
+         */
+        boolean draining = false;
+
+        /**
+         * Constructor.
+         *
+         * @param request Encoded request.
+         * @param head    Whether it's a HEAD request or not.
+         * @param timeout Milliseconds to wait for the response, `0` means forever.
+         */
+        Exchange(byte[] request, boolean head, long timeout)
+        {
+            this.request = request;
+            this.head    = head;
+            this.timeout = timeout;
+            this.parser  = new ResponseParser(head);
+        }
+
+        /**
+         * Starts waiting for the response.
+         *
+         * Called once the exchange is at the head of the queue.
+         */
+        void start()
+        {
+            if(this.timeout > 0) {
+                this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+            }
+        }
+
+        /**
+         * Returns the time left to receive the response.
+         *
+         * Counts from the time the exchange reached the head of the queue,
+         * so time spent queued behind other responses doesn't.
+         *
+         * @return Milliseconds left, `0` means forever.
+         *
+         * @throws SocketTimeoutException If the response is already late.
+         */
+        long getTimeout() throws SocketTimeoutException
+        {
+            if(this.deadline == 0) {
+                return 0;
+            }
+
+            long left = TimeUnit.NANOSECONDS.toMillis(this.deadline - System.nanoTime());
+            if(left <= 0) {
+                throw new SocketTimeoutException("Read timed out");
+            }
+
+            return left;
+        }
+    }
+
+    /**
+     * Body class.
+     *
+     * Streams the body of the response at the head of the queue.
+     *
+     * It can be read as a channel too, so the body is copied straight
+     * from the socket buffer to the caller's buffer.
+     */
+    private class Body extends InputStream implements ReadableByteChannel
+    {
+        /**
+         * Response parser.
+         */
+        private ResponseParser _parser;
+
+        /**
+         * Exchange this body belongs to.
+         */
+        private Exchange _exchange;
+
+        /**
+         * Whether the body has been completely read or closed.
+         */
+        private boolean _done = false;
+
+        /**
+         * Constructor.
+         *
+         * @param parser   Response parser.
+         * @param exchange Exchange this body belongs to.
+         */
+        Body(ResponseParser parser, Exchange exchange)
+        {
+            this._parser   = parser;
+            this._exchange = exchange;
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @return Read byte, `-1` at the end of the body.
+         */
+        @Override
+        public int read() throws IOException
+        {
+            byte[] b = new byte[1];
+
+            return (this.read(b, 0, 1) < 0) ? -1 : (b[0] & 0xFF);
+        }
+
+        /**
+         * Reads body bytes.
+         *
+         * @param b   Array to copy the bytes to.
+         * @param off Offset in `b`.
+         * @param len Maximum amount of bytes to read.
+         *
+         * @return Read bytes, `-1` at the end of the body.
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            return this.read(ByteBuffer.wrap(b, off, len));
+        }
+
+        /**
+         * Reads body bytes.
+         *
+         * @param dst Buffer to copy the bytes to.
+         *
+         * @return Read bytes, `-1` at the end of the body.
+         */
+        @Override
+        public int read(ByteBuffer dst) throws IOException
+        {
+            if(this._done) {
+                return -1;
+            }
+
+            try {
+                int n;
+                while((n = this._parser.readBody(PipelinedConnection.this._buffer, dst)) == 0) {
+                    if(!dst.hasRemaining()) {
+                        return 0;
+                    }
+
+                    if(PipelinedConnection.this._fill(PipelinedConnection.this._timeout)) {
+                        continue;
+                    }
+
+                    if(!this._parser.eof()) {
+                        throw new EOFException("Connection closed in the middle of a response");
+                    }
+
+                    PipelinedConnection.this._reusable = false;
+                }
+
+                if(n < 0) {
+                    this._finish();
+                }
+
+                return n;
+            } catch(IOException e) {
+                this._done = true;
+                PipelinedConnection.this._fail();
+
+                throw e;
+            }
+        }
+
+        /**
+         * Returns whether the body can still be read or not.
+         *
+         * @return Whether the body can still be read or not.
+         */
+        @Override
+        public boolean isOpen()
+        {
+            return !this._done;
+        }
+
+        /**
+         * Closes the body.
+         *
+         * The rest of the body is skipped so the next response can be read.
+         */
+        @Override
+        public void close() throws IOException
+        {
+            byte[] skip = new byte[4096];
+
+            while(this.read(skip, 0, skip.length) >= 0) {
+                // Skip
+            }
+        }
+
+        /**
+         * Hands the connection to the next exchange.
+         */
+        private void _finish()
+        {
+            if(this._done) {
+                return;
+            }
+
+            this._done = true;
+            PipelinedConnection.this._complete(this._exchange);
+        }
+    }
+}
@@ -0,0 +1,313 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Pipelined host.
+ *
+ * Keeps the pipelined connections opened to a host and decides
+ * which one takes each request.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+class PipelinedHost
+{
+    /**
+     * Host name.
+     */
+    private String _name;
+
+    /**
+     * Host port.
+     */
+    private int _port;
+
+    /**
+     * Maximum amount of connections.
+     */
+    private int _maxConnections;
+
+    /**
+     * Maximum amount of requests waiting for their response on a connection.
+     */
+    private int _depth;
+
+    /**
+     * Milliseconds to wait for a connection, `0` means forever.
+     */
+    private int _connectTimeout;
+
+    /**
+     * Milliseconds to wait for the socket, `0` means forever.
+     */
+    private int _timeout;
+
+    /**
+     * Resolver of the host name.
+     */
+    private Resolver _resolver;
+
+    /**
+     * Open connections.
+     */
+    private ArrayList<PipelinedConnection> _connections = new ArrayList<>();
+
+    /**
+     * Connections being opened.
+     */
+    private int _connecting = 0;
+
+    /**
+     * Amount of connections opened, used to spread them between the addresses.
+     */
+    private int _opened = 0;
+
+    /**
+     * Guards the connections.
+     *
+     * A lock instead of `synchronized`, so virtual threads waiting
+     * for a connection don't pin their carrier.
+     */
+    private ReentrantLock _lock = new ReentrantLock();
+
+    /**
+     * Signalled when a connection has room or is closed.
+     */
+    private Condition _released = this._lock.newCondition();
+
+    /**
+     * Constructor.
+     *
+     * @param name           Host name.
+     * @param port           Host port.
+     * @param maxConnections Maximum amount of connections.
+     * @param depth          Maximum amount of requests waiting for their response on a connection.
+     * @param connectTimeout Milliseconds to wait for a connection, `0` means forever.
+     * @param timeout        Milliseconds to wait for the socket, `0` means forever.
+     * @param resolver       Resolver of the host name.
+     */
+    PipelinedHost(String name, int port, int maxConnections, int depth, int connectTimeout, int timeout, Resolver resolver)
+    {
+        this._name           = name;
+        this._port           = port;
+        this._maxConnections = maxConnections;
+        this._depth          = depth;
+        this._connectTimeout = connectTimeout;
+        this._timeout        = timeout;
+        this._resolver       = resolver;
+    }
+
+    /**
+     * Writes a request to the least busy connection.
+     *
+     * Opens a new connection if all of them are full and there's room
+     * for more, otherwise waits until one of them has room.
+     *
+     * Connections are opened and requests written without holding the
+     * lock, so a slow connect doesn't hold the other requests to the host.
+     *
+     * @param exchange Exchange to send.
+     *
+     * @return Connection the request was written to.
+     *
+     * @throws IOException If no connection could be opened.
+     */
+    PipelinedConnection enqueue(PipelinedConnection.Exchange exchange) throws IOException
+    {
+        while(true) {
+            PipelinedConnection best;
+            int                 index = -1;
+
+            this._lock.lock();
+            try {
+                while(
+                    (best = this._choose()) == null &&
+                    this._connections.size() + this._connecting >= this._maxConnections
+                ) {
+                    this._released.await();
+                }
+
+                if(best != null) {
+                    best.reserve();
+                } else {
+                    this._connecting++;
+                    index = this._opened++;
+                }
+            } catch(InterruptedException e) {
+                Thread.currentThread().interrupt();
+
+                throw new InterruptedIOException("Interrupted while waiting for a connection");
+            } finally {
+                this._lock.unlock();
+            }
+
+            if(best == null) {
+                best = this._connect(index);
+            }
+
+            if(best.enqueue(exchange)) {
+                return best;
+            }
+        }
+    }
+
+    /**
+     * Chooses the connection with the fewest requests waiting.
+     *
+     * Drops the connections that can't be used anymore.
+     *
+     * @return Chosen connection, `null` if all of them are full.
+     */
+    private PipelinedConnection _choose()
+    {
+        this._connections.removeIf((c) -> !c.isUsable());
+
+        PipelinedConnection best = null;
+        for(PipelinedConnection c : this._connections) {
+            int pending = c.pending();
+
+            if(
+                pending < this._depth &&
+                (best == null || pending < best.pending())
+            ) {
+                best = c;
+            }
+        }
+
+        return best;
+    }
+
+    /**
+     * Opens a new connection.
+     *
+     * Connections are spread between the addresses of the host. If it
+     * can't be opened, the host is resolved again for the next one.
+     *
+     * The new connection is already reserved for the request that opened it.
+     *
+     * @param index Amount of connections opened before this one.
+     *
+     * @return New connection.
+     *
+     * @throws IOException If the connection couldn't be opened.
+     */
+    private PipelinedConnection _connect(int index) throws IOException
+    {
+        PipelinedConnection connection = null;
+
+        try {
+            InetAddress[] addresses = this._resolver.resolve(this._name);
+
+            connection = new PipelinedConnection(
+                    this,
+                    new InetSocketAddress(addresses[index % addresses.length], this._port),
+                    this._connectTimeout,
+                    this._timeout
+            );
+            connection.reserve();
+
+            return connection;
+        } catch(IOException e) {
+            this._resolver.invalidate(this._name);
+
+            throw e;
+        } finally {
+            this._lock.lock();
+            try {
+                this._connecting--;
+                if(connection != null) {
+                    this._connections.add(connection);
+                }
+
+                this._released.signalAll();
+            } finally {
+                this._lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Wakes up the requests waiting for a connection.
+     */
+    void released()
+    {
+        this._lock.lock();
+        try {
+            this._released.signalAll();
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Stops pipelining requests to this host.
+     */
+    void disablePipelining()
+    {
+        this._lock.lock();
+        try {
+            if(this._depth > 1) {
+                Console.debug(this._name +" doesn't support pipelining, sending one request at a time.");
+            }
+
+            this._depth = 1;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Stops reusing connections to this host.
+     *
+     * Connections are closed after their response, so only one
+     * request is sent through each of them.
+     */
+    void disableKeepAlive()
+    {
+        this._lock.lock();
+        try {
+            if(this._depth > 1) {
+                Console.debug(this._name +" closes every connection, sending one request per connection.");
+            }
+
+            this._depth = 1;
+        } finally {
+            this._lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the value of the `Host` header.
+     *
+     * @return Host name, with the port if it isn't 80.
+     */
+    String getHostHeader()
+    {
+        return (this._port == 80) ? this._name : this._name +":"+ this._port;
+    }
+
+    /**
+     * Closes all connections.
+     */
+    void close()
+    {
+        this._lock.lock();
+        try {
+            for(PipelinedConnection c : this._connections) {
+                c.close();
+            }
+
+            this._connections.clear();
+        } finally {
+            this._lock.unlock();
+        }
+    }
+}
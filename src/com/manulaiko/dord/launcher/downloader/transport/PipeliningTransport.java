@@ -0,0 +1,177 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Proxy;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Pipelining transport.
+ *
+ * Opens a handful of raw `SocketChannel` connections to each host and
+ * pipelines GET and HEAD requests through them, so the next request is
+ * already on the wire while the previous response is being read.
+ *
+ * Hosts that close the connection without answering pipelined requests
+ * are sent one request at a time, and hosts that don't keep connections
+ * alive get one request per connection.
+ *
+ * Anything else (https, other methods, requests through a proxy) goes
+ * through `URLConnectionTransport`.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class PipeliningTransport implements Transport
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int MAX_ATTEMPTS = 3;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Maximum amount of connections to each host.
+     */
+    private int _connections;
+
+    /**
+     * Maximum amount of requests waiting for their response on a connection.
+     */
+    private int _depth;
+
+    /**
+     * Milliseconds to wait for a connection, `0` means forever.
+     */
+    private int _connectTimeout;
+
+    /**
+     * Milliseconds to wait for the socket, `0` means forever.
+     */
+    private int _timeout;
+
+    /**
+     * Hosts, indexed by `host:port`.
+     */
+    private ConcurrentHashMap<String, PipelinedHost> _hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Transport for the requests that can't be pipelined.
+     */
+    private Transport _fallback;
+
+    /**
+     * Resolver of the host names.
+     */
+    private Resolver _resolver;
+
+    /**
+     * Constructor.
+     *
+     * @param connections    Maximum amount of connections to each host.
+     * @param depth          Maximum amount of requests waiting for their response on a connection.
+     * @param connectTimeout Milliseconds to wait for a connection, `0` means forever.
+     * @param timeout        Milliseconds to wait for the socket once the response started, `0` means forever.
+     * @param resolver       Resolver of the host names.
+     */
+    public PipeliningTransport(int connections, int depth, int connectTimeout, int timeout, Resolver resolver)
+    {
+        this._connections    = connections;
+        this._depth          = depth;
+        this._connectTimeout = connectTimeout;
+        this._timeout        = timeout;
+        this._fallback       = new URLConnectionTransport(connectTimeout, timeout);
+        this._resolver       = resolver;
+    }
+
+    /**
+     * Sends a request.
+     *
+     * @param request Request to send.
+     *
+     * @return Server response.
+     *
+     * @throws IOException If the request couldn't be sent.
+     */
+    @Override
+    public Response send(Request request) throws IOException
+    {
+        URL     url  = request.getUrl();
+        boolean head = request.getMethod().equals("HEAD");
+
+        if(
+            !url.getProtocol().equals("http")             ||
+            (!head && !request.getMethod().equals("GET")) ||
+            request.getProxy().type() != Proxy.Type.DIRECT
+        ) {
+            return this._fallback.send(request);
+        }
+
+        int           port = (url.getPort() < 0) ? url.getDefaultPort() : url.getPort();
+        PipelinedHost host = this._hosts.computeIfAbsent(
+                url.getHost() +":"+ port,
+                (k) -> new PipelinedHost(url.getHost(), port, this._connections, this._depth, this._connectTimeout, this._timeout, this._resolver)
+        );
+
+        byte[] encoded = this._encode(request, host.getHostHeader());
+        for(int i = 0; i < PipeliningTransport.MAX_ATTEMPTS; i++) {
+            PipelinedConnection.Exchange exchange   = new PipelinedConnection.Exchange(encoded, head, request.getTimeout());
+            PipelinedConnection          connection = host.enqueue(exchange);
+
+            Response r = connection.receive(exchange);
+            if(r != null) {
+                return r;
+            }
+        }
+
+        throw new EOFException("Connection closed before answering "+ url);
+    }
+
+    /**
+     * Closes all connections.
+     */
+    @Override
+    public void close()
+    {
+        for(PipelinedHost host : this._hosts.values()) {
+            host.close();
+        }
+
+        this._hosts.clear();
+        this._fallback.close();
+    }
+
+    /**
+     * Encodes a request.
+     *
+     * @param request Request to encode.
+     * @param host    Value of the `Host` header.
+     *
+     * @return Encoded request.
+     */
+    private byte[] _encode(Request request, String host)
+    {
+        String path = request.getUrl().getFile();
+        if(path.isEmpty()) {
+            path = "/";
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(request.getMethod()).append(" ").append(path).append(" HTTP/1.1\r\n")
+          .append("Host: ").append(host).append("\r\n")
+          .append("Accept: */*\r\n")
+          .append("Connection: keep-alive\r\n");
+
+        for(Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            sb.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+
+        sb.append("\r\n");
+
+        return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,196 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.net.Proxy;
+import java.net.URL;
+import java.util.LinkedHashMap;
+
+/**
+ * Request class.
+ *
+ * Contains the information of a HTTP request.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Request
+{
+    /**
+     * Request method.
+     */
+    private String _method;
+
+    /**
+     * Requested URL.
+     */
+    private URL _url;
+
+    /**
+     * Request headers.
+     */
+    private LinkedHashMap<String, String> _headers = new LinkedHashMap<>();
+
+    /**
+     * Milliseconds to wait for the response, `0` means forever.
+     */
+    private long _timeout = 0;
+
+    /**
+     * Proxy to send the request through.
+     */
+    private Proxy _proxy = Proxy.NO_PROXY;
+
+    /**
+     * Constructor.
+     *
+     * @param method Request method.
+     * @param url    Requested URL.
+     */
+    public Request(String method, URL url)
+    {
+        this._method = method;
+        this._url    = url;
+    }
+
+    /**
+     * Constructor.
+     *
+     * Builds a GET request.
+     *
+     * @param url Requested URL.
+     */
+    public Request(URL url)
+    {
+        this("GET", url);
+    }
+
+    /**
+     * Returns a copy of the request.
+     *
+     * So it can be sent again with other settings.
+     *
+     * @return Request with the same method, URL, headers, timeout and proxy.
+     */
+    public Request copy()
+    {
+        Request request = new Request(this._method, this._url);
+
+        request._headers.putAll(this._headers);
+        request._timeout = this._timeout;
+        request._proxy   = this._proxy;
+
+        return request;
+    }
+
+    /**
+     * Sets a request header.
+     *
+     * @param name  Header name.
+     * @param value Header value.
+     *
+     * @return This request.
+     */
+    public Request setHeader(String name, String value)
+    {
+        this._headers.put(name, value);
+
+        return this;
+    }
+
+    /**
+     * Requests a range of the file.
+     *
+     * `If-Range` makes the server send the whole file instead if it
+     * changed since `validator` was received.
+     *
+     * @param first     First byte of the range.
+     * @param last      Last byte of the range, `-1` for the end of the file.
+     * @param validator `ETag` or `Last-Modified` of the file.
+     *
+     * @return This request.
+     */
+    public Request setRange(long first, long last, String validator)
+    {
+        return this.setHeader("Range", "bytes="+ first +"-"+ ((last < 0) ? "" : last))
+                   .setHeader("If-Range", validator);
+    }
+
+    /**
+     * Sets the time to wait for the response.
+     *
+     * Only the status line and headers must arrive in time, the body
+     * can take as long as it needs.
+     *
+     * @param timeout Milliseconds to wait for the response, `0` means forever.
+     *
+     * @return This request.
+     */
+    public Request setTimeout(long timeout)
+    {
+        this._timeout = timeout;
+
+        return this;
+    }
+
+    /**
+     * Sets the proxy to send the request through.
+     *
+     * @param proxy Proxy to use, `Proxy.NO_PROXY` to connect directly.
+     *
+     * @return This request.
+     */
+    public Request setProxy(Proxy proxy)
+    {
+        this._proxy = proxy;
+
+        return this;
+    }
+
+    /**
+     * Returns request method.
+     *
+     * @return Request method.
+     */
+    public String getMethod()
+    {
+        return this._method;
+    }
+
+    /**
+     * Returns requested URL.
+     *
+     * @return Requested URL.
+     */
+    public URL getUrl()
+    {
+        return this._url;
+    }
+
+    /**
+     * Returns request headers.
+     *
+     * @return Request headers.
+     */
+    public LinkedHashMap<String, String> getHeaders()
+    {
+        return this._headers;
+    }
+
+    /**
+     * Returns the time to wait for the response.
+     *
+     * @return Milliseconds to wait for the response, `0` means forever.
+     */
+    public long getTimeout()
+    {
+        return this._timeout;
+    }
+
+    /**
+     * Returns the proxy to send the request through.
+     *
+     * @return Proxy to use, `Proxy.NO_PROXY` to connect directly.
+     */
+    public Proxy getProxy()
+    {
+        return this._proxy;
+    }
+}
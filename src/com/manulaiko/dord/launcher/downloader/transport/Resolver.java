@@ -0,0 +1,130 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.manulaiko.tabitha.Console;
+
+/**
+ * Resolver class.
+ *
+ * Caches the addresses of the hosts for a while, so each connection
+ * doesn't wait for a name lookup.
+ *
+ * Only the pipelining transport resolves through it, the other ones
+ * resolve the hosts by themselves and use the JVM's own cache, whose
+ * TTL (`networkaddress.cache.ttl`) isn't changed.
+ *
+ * If a host can't be resolved once its addresses expired, the old ones
+ * are still used.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Resolver
+{
+    /**
+     * Milliseconds the addresses are kept, `0` means they aren't.
+     */
+    private long _ttl;
+
+    /**
+     * Resolved hosts, indexed by name.
+     */
+    private ConcurrentHashMap<String, Entry> _hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Constructor.
+     *
+     * @param ttl Milliseconds the addresses are kept, `0` means they aren't.
+     */
+    public Resolver(long ttl)
+    {
+        this._ttl = ttl;
+    }
+
+    /**
+     * Returns the addresses of a host.
+     *
+     * @param host Host name.
+     *
+     * @return Addresses of the host.
+     *
+     * @throws UnknownHostException If the host can't be resolved.
+     */
+    public InetAddress[] resolve(String host) throws UnknownHostException
+    {
+        Entry entry = this._hosts.get(host);
+        long  now   = System.currentTimeMillis();
+
+        if(
+            entry != null &&
+            entry._expires > now
+        ) {
+            return entry._addresses;
+        }
+
+        try {
+            long          start     = System.nanoTime();
+            InetAddress[] addresses = InetAddress.getAllByName(host);
+
+            Console.debug("Resolved "+ host +" in "+ ((System.nanoTime() - start) / 1000000) +" ms");
+
+            if(this._ttl > 0) {
+                this._hosts.put(host, new Entry(addresses, now + this._ttl));
+            }
+
+            return addresses;
+        } catch(UnknownHostException e) {
+            if(entry == null) {
+                throw e;
+            }
+
+            Console.debug("Couldn't resolve "+ host +" again, using its old addresses");
+
+            return entry._addresses;
+        }
+    }
+
+    /**
+     * Forgets the addresses of a host.
+     *
+     * Used when they couldn't be connected to.
+     *
+     * @param host Host name.
+     */
+    public void invalidate(String host)
+    {
+        this._hosts.remove(host);
+    }
+
+    /**
+     * Entry class.
+     *
+     * Addresses of a host.
+     */
+    private static class Entry
+    {
+        /**
+         * Addresses of the host.
+         */
+        private InetAddress[] _addresses;
+
+        /**
+         * Time the addresses expire.
+         */
+        private long _expires;
+
+        /**
+         * Constructor.
+         *
+         * @param addresses Addresses of the host.
+         * @param expires   Time the addresses expire.
+         */
+        Entry(InetAddress[] addresses, long expires)
+        {
+            this._addresses = addresses;
+            this._expires   = expires;
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Response class.
+ *
+ * Contains the status, headers and body of a HTTP response.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class Response implements Closeable
+{
+    /**
+     * Status code.
+     */
+    private int _status;
+
+    /**
+     * Response headers.
+     *
+     * Header names are case insensitive.
+     */
+    private TreeMap<String, String> _headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+
+    /**
+     * Response body.
+     */
+    private InputStream _body;
+
+    /**
+     * Action that aborts the response, `null` to just close the body.
+     */
+    private Runnable _abort;
+
+    /**
+     * Whether the response was aborted or not.
+     */
+    private volatile boolean _aborted = false;
+
+    /**
+     * Actions run once the response is closed or aborted, `null` if none.
+     */
+    private Runnable _onClose;
+
+    /**
+     * Whether `_onClose` already ran or not.
+     */
+    private boolean _closed = false;
+
+    /**
+     * Encoded body, `null` unless it's being decoded.
+     */
+    private CountingInputStream _encoded;
+
+    /**
+     * Constructor.
+     *
+     * @param status Status code.
+     * @param body   Response body, `null` if it has no body.
+     */
+    public Response(int status, InputStream body)
+    {
+        this._status = status;
+        this._body   = (body == null) ? InputStream.nullInputStream() : body;
+    }
+
+    /**
+     * Sets a response header.
+     *
+     * Only the first value of each header is kept.
+     *
+     * @param name  Header name.
+     * @param value Header value.
+     */
+    public void setHeader(String name, String value)
+    {
+        if(
+            name  == null ||
+            value == null
+        ) {
+            return;
+        }
+
+        this._headers.putIfAbsent(name, value);
+    }
+
+    /**
+     * Sets the action that aborts the response.
+     *
+     * @param abort Action that drops the connection the body is read from.
+     */
+    public void setAbort(Runnable abort)
+    {
+        this._abort = abort;
+    }
+
+    /**
+     * Adds an action run once the response is closed or aborted.
+     *
+     * Actions run in the order they were added, right away if the
+     * response is already closed.
+     *
+     * @param onClose Action to run, only once.
+     */
+    public void addOnClose(Runnable onClose)
+    {
+        synchronized(this) {
+            if(!this._closed) {
+                this._addOnClose(onClose);
+
+                return;
+            }
+        }
+
+        onClose.run();
+    }
+
+    /**
+     * Chains an action after the ones already added.
+     *
+     * @param onClose Action to run, only once.
+     */
+    private void _addOnClose(Runnable onClose)
+    {
+        Runnable previous = this._onClose;
+        if(previous == null) {
+            this._onClose = onClose;
+
+            return;
+        }
+
+        this._onClose = () -> {
+            try {
+                previous.run();
+            } finally {
+                onClose.run();
+            }
+        };
+    }
+
+    /**
+     * Returns status code.
+     *
+     * @return Status code.
+     */
+    public int getStatus()
+    {
+        return this._status;
+    }
+
+    /**
+     * Returns a response header.
+     *
+     * @param name Header name.
+     *
+     * @return Header value, `null` if it wasn't sent.
+     */
+    public String getHeader(String name)
+    {
+        return this._headers.get(name);
+    }
+
+    /**
+     * Returns the length of the body.
+     *
+     * @return `Content-Length` header, `-1` if it's unknown or the body is being decoded.
+     */
+    public long getContentLength()
+    {
+        if(this._encoded != null) {
+            return -1;
+        }
+
+        try {
+            return Long.parseLong(this.getHeader("Content-Length").trim());
+        } catch(Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the first byte of a partial response.
+     *
+     * @return First byte of `Content-Range`, `-1` if it's missing or malformed.
+     */
+    public long getRangeStart()
+    {
+        String range = this.getHeader("Content-Range"); // bytes start-end/length
+
+        try {
+            return Long.parseLong(range.substring(range.indexOf(' ') + 1, range.indexOf('-')).trim());
+        } catch(Exception e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Returns the value to send in `If-Range` when requesting a range of the file.
+     *
+     * @return Strong `ETag`, `Last-Modified` or `null` if there's none.
+     */
+    public String getRangeValidator()
+    {
+        String etag = this.getHeader("ETag");
+        if(
+            etag != null &&
+            !etag.startsWith("W/") // Weak tags can't be used with ranges.
+        ) {
+            return etag;
+        }
+
+        return this.getHeader("Last-Modified");
+    }
+
+    /**
+     * Decodes the body while it's read.
+     *
+     * Bodies sent with `Content-Encoding: gzip` or `deflate` are decompressed,
+     * the rest are read as they are.
+     *
+     * @return `true` if the body is being decoded, `false` if it wasn't encoded.
+     *
+     * @throws IOException If the encoding isn't supported or the body is malformed.
+     */
+    public boolean decode() throws IOException
+    {
+        String encoding = this.getHeader("Content-Encoding");
+        if(
+            encoding == null ||
+            encoding.trim().equalsIgnoreCase("identity")
+        ) {
+            return false;
+        }
+
+        this._encoded = new CountingInputStream(this._body);
+
+        switch(encoding.trim().toLowerCase())
+        {
+            case "gzip":
+            case "x-gzip":
+                this._body = new GZIPInputStream(this._encoded);
+
+                break;
+
+            case "deflate":
+                this._body = this._inflate(this._encoded);
+
+                break;
+
+            default:
+                throw new IOException("Unsupported Content-Encoding "+ encoding);
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns the bytes read from the encoded body.
+     *
+     * @return Bytes read before decoding them, `-1` if the body isn't being decoded.
+     */
+    public long getWireBytes()
+    {
+        if(this._encoded == null) {
+            return -1;
+        }
+
+        return this._encoded._count;
+    }
+
+    /**
+     * Returns response body.
+     *
+     * @return Response body.
+     */
+    public InputStream getBody()
+    {
+        return this._body;
+    }
+
+    /**
+     * Returns response body as a channel.
+     *
+     * Bodies that are already channels are returned as they are, so no
+     * intermediate array is used to read them.
+     *
+     * @return Response body.
+     */
+    public ReadableByteChannel getChannel()
+    {
+        if(this._body instanceof ReadableByteChannel) {
+            return (ReadableByteChannel)this._body;
+        }
+
+        return Channels.newChannel(this._body);
+    }
+
+    /**
+     * Closes the response body.
+     *
+     * Does nothing if the response was aborted.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if(this._aborted) {
+            return;
+        }
+
+        try {
+            this._body.close();
+        } finally {
+            this._finish();
+        }
+    }
+
+    /**
+     * Aborts the response.
+     *
+     * Can be called from any thread, a thread blocked reading the
+     * body fails right away.
+     */
+    public void abort()
+    {
+        this._aborted = true;
+
+        try {
+            if(this._abort != null) {
+                this._abort.run();
+
+                return;
+            }
+
+            this._body.close();
+        } catch(IOException e) {
+            // Ignore
+        } finally {
+            this._finish();
+        }
+    }
+
+    /**
+     * Runs the close action, if it didn't run yet.
+     */
+    private void _finish()
+    {
+        Runnable onClose;
+        synchronized(this) {
+            if(this._closed) {
+                return;
+            }
+
+            this._closed = true;
+            onClose      = this._onClose;
+        }
+
+        if(onClose != null) {
+            onClose.run();
+        }
+    }
+
+    /**
+     * Inflates a `deflate` body.
+     *
+     * It should be a zlib stream, but some servers send raw deflate data.
+     *
+     * @param in Encoded body.
+     *
+     * @return Decoded body.
+     *
+     * @throws IOException If the body can't be read.
+     */
+    private InputStream _inflate(InputStream in) throws IOException
+    {
+        PushbackInputStream body   = new PushbackInputStream(in, 2);
+        byte[]              header = new byte[2];
+        int                 n      = body.readNBytes(header, 0, 2);
+
+        body.unread(header, 0, n);
+
+        boolean zlib = (
+            n == 2                                                   &&
+            (header[0] & 0x0F) == 8                                  &&
+            (((header[0] & 0xFF) << 8) | (header[1] & 0xFF)) % 31 == 0
+        );
+
+        return new InflaterInputStream(body, new Inflater(!zlib));
+    }
+
+    /**
+     * Counting input stream.
+     *
+     * Counts the bytes read from a stream.
+     */
+    private static class CountingInputStream extends FilterInputStream
+    {
+        /**
+         * Read bytes.
+         */
+        private volatile long _count = 0;
+
+        /**
+         * Constructor.
+         *
+         * @param in Counted stream.
+         */
+        CountingInputStream(InputStream in)
+        {
+            super(in);
+        }
+
+        /**
+         * Reads a byte.
+         *
+         * @return Read byte, `-1` at the end of the stream.
+         *
+         * @throws IOException If the stream can't be read.
+         */
+        @Override
+        public int read() throws IOException
+        {
+            int b = super.read();
+            if(b >= 0) {
+                this._count++;
+            }
+
+            return b;
+        }
+
+        /**
+         * Reads some bytes.
+         *
+         * @param b   Destination array.
+         * @param off First position to write.
+         * @param len Maximum amount of bytes to read.
+         *
+         * @return Read bytes, `-1` at the end of the stream.
+         *
+         * @throws IOException If the stream can't be read.
+         */
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException
+        {
+            int n = super.read(b, off, len);
+            if(n > 0) {
+                this._count += n;
+            }
+
+            return n;
+        }
+    }
+}
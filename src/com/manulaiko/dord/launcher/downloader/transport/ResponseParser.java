@@ -0,0 +1,448 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+/**
+ * Response parser.
+ *
+ * Incremental HTTP/1.1 response parser. It never blocks: it consumes
+ * whatever bytes are available in the buffer it's fed with and remembers
+ * where it stopped, so the caller can read more bytes from the socket and
+ * call it again.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+class ResponseParser
+{
+    ///////////////////////////////
+    // Start Constant definition //
+    ///////////////////////////////
+    private static final int STATE_STATUS     = 0;
+    private static final int STATE_HEADERS    = 1;
+    private static final int STATE_BODY       = 2;
+    private static final int STATE_UNTIL_EOF  = 3;
+    private static final int STATE_CHUNK_SIZE = 4;
+    private static final int STATE_CHUNK_DATA = 5;
+    private static final int STATE_CHUNK_END  = 6;
+    private static final int STATE_TRAILERS   = 7;
+    private static final int STATE_DONE       = 8;
+    private static final int MAX_LINE_LENGTH  = 65536;
+    /////////////////////////////
+    // End Constant definition //
+    /////////////////////////////
+
+    /**
+     * Current state.
+     */
+    private int _state = ResponseParser.STATE_STATUS;
+
+    /**
+     * Whether the response belongs to a HEAD request or not.
+     */
+    private boolean _head;
+
+    /**
+     * Line being read.
+     */
+    private StringBuilder _line = new StringBuilder();
+
+    /**
+     * Whether any byte of the response has been read or not.
+     */
+    private boolean _started = false;
+
+    /**
+     * Protocol version.
+     */
+    private String _version = "";
+
+    /**
+     * Status code.
+     */
+    private int _status = 0;
+
+    /**
+     * Response headers, as name/value pairs.
+     */
+    private ArrayList<String[]> _headers = new ArrayList<>();
+
+    /**
+     * Remaining bytes of the body or current chunk.
+     */
+    private long _remaining = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param head Whether the response belongs to a HEAD request or not.
+     */
+    ResponseParser(boolean head)
+    {
+        this._head = head;
+    }
+
+    /**
+     * Parses the status line and the headers.
+     *
+     * @param in Buffer with the received bytes, in read mode.
+     *
+     * @return `true` once the headers have been parsed, `false` if more bytes are needed.
+     *
+     * @throws IOException If the response is malformed.
+     */
+    boolean parseHead(ByteBuffer in) throws IOException
+    {
+        while(
+            this._state == ResponseParser.STATE_STATUS ||
+            this._state == ResponseParser.STATE_HEADERS
+        ) {
+            String line = this._readLine(in);
+            if(line == null) {
+                return false;
+            }
+
+            if(this._state == ResponseParser.STATE_STATUS) {
+                this._parseStatus(line);
+
+                continue;
+            }
+
+            if(line.isEmpty()) {
+                this._startBody();
+
+                continue;
+            }
+
+            int colon = line.indexOf(':');
+            if(colon <= 0) {
+                throw new IOException("Malformed header '"+ line +"'");
+            }
+
+            this._headers.add(new String[] {
+                    line.substring(0, colon).trim(),
+                    line.substring(colon + 1).trim()
+            });
+        }
+
+        return true;
+    }
+
+    /**
+     * Reads body bytes.
+     *
+     * @param in  Buffer with the received bytes, in read mode.
+     * @param out Buffer to copy the body bytes to, in write mode.
+     *
+     * @return Copied bytes, `0` if more bytes are needed or `-1` if the body is complete.
+     *
+     * @throws IOException If the body is malformed.
+     */
+    int readBody(ByteBuffer in, ByteBuffer out) throws IOException
+    {
+        if(!out.hasRemaining()) {
+            return 0;
+        }
+
+        while(true) {
+            String line;
+
+            switch(this._state)
+            {
+                case ResponseParser.STATE_DONE:
+                    return -1;
+
+                case ResponseParser.STATE_UNTIL_EOF:
+                    return this._copy(in, out, Long.MAX_VALUE);
+
+                case ResponseParser.STATE_BODY:
+                case ResponseParser.STATE_CHUNK_DATA:
+                    int n = this._copy(in, out, this._remaining);
+
+                    this._remaining -= n;
+                    if(this._remaining == 0) {
+                        this._state = (this._state == ResponseParser.STATE_BODY)
+                                    ? ResponseParser.STATE_DONE
+                                    : ResponseParser.STATE_CHUNK_END;
+                    }
+
+                    if(n > 0) {
+                        return n;
+                    }
+
+                    if(!in.hasRemaining()) {
+                        return 0;
+                    }
+
+                    break;
+
+                case ResponseParser.STATE_CHUNK_SIZE:
+                    if((line = this._readLine(in)) == null) {
+                        return 0;
+                    }
+
+                    int extension = line.indexOf(';');
+                    try {
+                        this._remaining = Long.parseLong((extension < 0 ? line : line.substring(0, extension)).trim(), 16);
+                    } catch(NumberFormatException e) {
+                        throw new IOException("Malformed chunk size '"+ line +"'");
+                    }
+
+                    this._state = (this._remaining == 0)
+                                ? ResponseParser.STATE_TRAILERS
+                                : ResponseParser.STATE_CHUNK_DATA;
+
+                    break;
+
+                case ResponseParser.STATE_CHUNK_END:
+                    if(this._readLine(in) == null) {
+                        return 0;
+                    }
+
+                    this._state = ResponseParser.STATE_CHUNK_SIZE;
+
+                    break;
+
+                case ResponseParser.STATE_TRAILERS:
+                    if((line = this._readLine(in)) == null) {
+                        return 0;
+                    }
+
+                    if(line.isEmpty()) {
+                        this._state = ResponseParser.STATE_DONE;
+                    }
+
+                    break;
+
+                default:
+                    throw new IOException("Body read before headers");
+            }
+        }
+    }
+
+    /**
+     * Tells the parser that the connection has been closed.
+     *
+     * @return `true` if the body was delimited by the end of the connection,
+     *         `false` if the response was cut off.
+     */
+    boolean eof()
+    {
+        if(this._state == ResponseParser.STATE_UNTIL_EOF) {
+            this._state = ResponseParser.STATE_DONE;
+        }
+
+        return this._state == ResponseParser.STATE_DONE;
+    }
+
+    /**
+     * Returns whether any byte of the response has been read or not.
+     *
+     * @return Whether any byte of the response has been read or not.
+     */
+    boolean hasStarted()
+    {
+        return this._started;
+    }
+
+    /**
+     * Returns whether the connection can be reused after this response.
+     *
+     * @return Whether the connection can be reused after this response.
+     */
+    boolean isKeepAlive()
+    {
+        if(this._state == ResponseParser.STATE_UNTIL_EOF) {
+            return false;
+        }
+
+        String connection = this.getHeader("Connection");
+        if(connection == null) {
+            return this._version.equals("HTTP/1.1");
+        }
+
+        return !connection.equalsIgnoreCase("close") && (
+            this._version.equals("HTTP/1.1") ||
+            connection.equalsIgnoreCase("keep-alive")
+        );
+    }
+
+    /**
+     * Returns status code.
+     *
+     * @return Status code.
+     */
+    int getStatus()
+    {
+        return this._status;
+    }
+
+    /**
+     * Returns response headers.
+     *
+     * @return Response headers, as name/value pairs.
+     */
+    ArrayList<String[]> getHeaders()
+    {
+        return this._headers;
+    }
+
+    /**
+     * Returns a response header.
+     *
+     * @param name Header name.
+     *
+     * @return Header value, `null` if it wasn't sent.
+     */
+    String getHeader(String name)
+    {
+        for(String[] header : this._headers) {
+            if(header[0].equalsIgnoreCase(name)) {
+                return header[1];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Parses the status line.
+     *
+     * @param line Status line.
+     *
+     * @throws IOException If it's malformed.
+     */
+    private void _parseStatus(String line) throws IOException
+    {
+        String[] parts = line.split(" ", 3);
+        if(
+            parts.length < 2 ||
+            !parts[0].startsWith("HTTP/")
+        ) {
+            throw new IOException("Malformed status line '"+ line +"'");
+        }
+
+        try {
+            this._status = Integer.parseInt(parts[1]);
+        } catch(NumberFormatException e) {
+            throw new IOException("Malformed status line '"+ line +"'");
+        }
+
+        this._version = parts[0];
+        this._state   = ResponseParser.STATE_HEADERS;
+    }
+
+    /**
+     * Decides how the body is delimited once the headers are parsed.
+     *
+     * @throws IOException If the framing headers are malformed.
+     */
+    private void _startBody() throws IOException
+    {
+        if(this._status / 100 == 1) {
+            // Interim response, the real one follows.
+            this._headers.clear();
+            this._state = ResponseParser.STATE_STATUS;
+
+            return;
+        }
+
+        if(
+            this._head          ||
+            this._status == 204 ||
+            this._status == 304
+        ) {
+            this._state = ResponseParser.STATE_DONE;
+
+            return;
+        }
+
+        String encoding = this.getHeader("Transfer-Encoding");
+        if(
+            encoding != null &&
+            encoding.toLowerCase().contains("chunked")
+        ) {
+            this._state = ResponseParser.STATE_CHUNK_SIZE;
+
+            return;
+        }
+
+        String length = this.getHeader("Content-Length");
+        if(length == null) {
+            this._state = ResponseParser.STATE_UNTIL_EOF;
+
+            return;
+        }
+
+        try {
+            this._remaining = Long.parseLong(length.trim());
+        } catch(NumberFormatException e) {
+            throw new IOException("Malformed Content-Length '"+ length +"'");
+        }
+
+        this._state = (this._remaining == 0)
+                    ? ResponseParser.STATE_DONE
+                    : ResponseParser.STATE_BODY;
+    }
+
+    /**
+     * Reads a line.
+     *
+     * @param in Buffer with the received bytes, in read mode.
+     *
+     * @return Read line without the line terminator, `null` if it isn't complete yet.
+     *
+     * @throws IOException If the line is too long.
+     */
+    private String _readLine(ByteBuffer in) throws IOException
+    {
+        while(in.hasRemaining()) {
+            char c = (char)(in.get() & 0xFF);
+            this._started = true;
+
+            if(c == '\n') {
+                int length = this._line.length();
+                if(
+                    length > 0 &&
+                    this._line.charAt(length - 1) == '\r'
+                ) {
+                    this._line.setLength(length - 1);
+                }
+
+                String line = this._line.toString();
+                this._line.setLength(0);
+
+                return line;
+            }
+
+            if(this._line.length() >= ResponseParser.MAX_LINE_LENGTH) {
+                throw new IOException("Response line too long");
+            }
+
+            this._line.append(c);
+        }
+
+        return null;
+    }
+
+    /**
+     * Copies body bytes.
+     *
+     * @param in    Buffer with the received bytes, in read mode.
+     * @param out   Buffer to copy the bytes to, in write mode.
+     * @param limit Remaining bytes of the body or chunk.
+     *
+     * @return Copied bytes.
+     */
+    private int _copy(ByteBuffer in, ByteBuffer out, long limit)
+    {
+        int n = (int)Math.min(Math.min(out.remaining(), limit), in.remaining());
+
+        out.put(out.position(), in, in.position(), n);
+        out.position(out.position() + n);
+        in.position(in.position() + n);
+
+        return n;
+    }
+}
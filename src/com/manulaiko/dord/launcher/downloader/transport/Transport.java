@@ -0,0 +1,35 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.IOException;
+
+/**
+ * Transport interface.
+ *
+ * Sends the HTTP requests made by the downloader.
+ *
+ * Implementations must be thread safe as the same instance
+ * is shared by all the download workers.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public interface Transport
+{
+    /**
+     * Sends a request.
+     *
+     * The returned response must always be closed, even if its
+     * body isn't read, so the connection can be reused.
+     *
+     * @param request Request to send.
+     *
+     * @return Server response.
+     *
+     * @throws IOException If the request couldn't be sent.
+     */
+    Response send(Request request) throws IOException;
+
+    /**
+     * Closes the transport and releases its connections.
+     */
+    void close();
+}
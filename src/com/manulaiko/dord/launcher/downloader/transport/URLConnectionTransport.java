@@ -0,0 +1,108 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * URLConnection transport.
+ *
+ * Sends each request through `URL.openConnection`, connection
+ * reuse is left to the JVM's keep-alive cache.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class URLConnectionTransport implements Transport
+{
+    /**
+     * Milliseconds to wait for the connection, `0` means forever.
+     */
+    private int _connectTimeout;
+
+    /**
+     * Milliseconds each read of the socket can wait, `0` means forever.
+     */
+    private int _readTimeout;
+
+    /**
+     * Constructor.
+     *
+     * @param connectTimeout Milliseconds to wait for the connection, `0` means forever.
+     * @param readTimeout    Milliseconds each read of the socket can wait, `0` means forever.
+     */
+    public URLConnectionTransport(int connectTimeout, int readTimeout)
+    {
+        this._connectTimeout = connectTimeout;
+        this._readTimeout    = readTimeout;
+    }
+
+    /**
+     * Sends a request.
+     *
+     * A blocked read can't be aborted from another thread, so the socket
+     * timeout is the shortest of the request timeout and the read timeout.
+     * It limits the wait for the response and each read of the body.
+     *
+     * @param request Request to send.
+     *
+     * @return Server response.
+     *
+     * @throws IOException If the request couldn't be sent.
+     */
+    @Override
+    public Response send(Request request) throws IOException
+    {
+        HttpURLConnection connection = (HttpURLConnection)request.getUrl().openConnection(request.getProxy());
+
+        connection.setConnectTimeout(this._connectTimeout);
+        connection.setReadTimeout(this._getReadTimeout(request.getTimeout()));
+        connection.setRequestMethod(request.getMethod());
+        request.getHeaders().forEach(connection::setRequestProperty);
+
+        int         status = connection.getResponseCode();
+        InputStream body   = (status >= 400) ? connection.getErrorStream() : connection.getInputStream();
+        Response    r      = new Response(status, body);
+
+        r.setAbort(connection::disconnect);
+
+        for(Map.Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+            if(!header.getValue().isEmpty()) {
+                r.setHeader(header.getKey(), header.getValue().get(0));
+            }
+        }
+
+        return r;
+    }
+
+    /**
+     * Returns the socket timeout for a request.
+     *
+     * @param timeout Milliseconds to wait for the response, `0` means forever.
+     *
+     * @return Shortest of `timeout` and the read timeout, `0` if both are forever.
+     */
+    private int _getReadTimeout(long timeout)
+    {
+        if(
+            timeout <= 0 ||
+            (this._readTimeout > 0 && this._readTimeout < timeout)
+        ) {
+            return this._readTimeout;
+        }
+
+        return (int)Math.min(Integer.MAX_VALUE, timeout);
+    }
+
+    /**
+     * Closes the transport.
+     *
+     * Idle connections are owned by the JVM, so there's nothing to close.
+     */
+    @Override
+    public void close()
+    {
+        // Nothing to do.
+    }
+}
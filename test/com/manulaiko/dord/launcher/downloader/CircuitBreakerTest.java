@@ -0,0 +1,149 @@
+package com.manulaiko.dord.launcher.downloader;
+
+/**
+ * Tests for the circuit breaker.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class CircuitBreakerTest
+{
+    /**
+     * Runs the tests.
+     *
+     * @param args Command line arguments.
+     *
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        CircuitBreakerTest.testOpens();
+        CircuitBreakerTest.testSuccessResets();
+        CircuitBreakerTest.testHalfOpen();
+        CircuitBreakerTest.testTrialFails();
+        CircuitBreakerTest.testTrialCancelled();
+
+        System.out.println("CircuitBreakerTest: all tests passed");
+    }
+
+    /**
+     * The circuit opens after `threshold` consecutive failures.
+     *
+     * @throws CircuitOpenException If the circuit opens too early.
+     */
+    public static void testOpens() throws CircuitOpenException
+    {
+        CircuitBreaker breaker = new CircuitBreaker("test", 3, 60000);
+
+        for(int i = 0; i < 2; i++) {
+            breaker.acquire();
+            breaker.failure();
+        }
+
+        breaker.acquire();
+        breaker.failure();
+
+        CircuitBreakerTest._assertOpen(breaker, "circuit opens after 3 failures");
+    }
+
+    /**
+     * A success resets the failure count.
+     *
+     * @throws CircuitOpenException If the circuit opens.
+     */
+    public static void testSuccessResets() throws CircuitOpenException
+    {
+        CircuitBreaker breaker = new CircuitBreaker("test", 2, 60000);
+
+        breaker.failure();
+        breaker.success();
+        breaker.failure();
+
+        breaker.acquire();
+    }
+
+    /**
+     * Once the cooldown passes a single trial request is let through.
+     *
+     * @throws Exception If the trial isn't let through.
+     */
+    public static void testHalfOpen() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreakerTest._open(50);
+
+        Thread.sleep(100);
+
+        breaker.acquire();
+        CircuitBreakerTest._assertOpen(breaker, "only one trial request");
+
+        breaker.success();
+        breaker.acquire();
+        breaker.acquire();
+    }
+
+    /**
+     * A failed trial opens the circuit again.
+     *
+     * @throws Exception If the trial isn't let through.
+     */
+    public static void testTrialFails() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreakerTest._open(50);
+
+        Thread.sleep(100);
+
+        breaker.acquire();
+        breaker.failure();
+
+        CircuitBreakerTest._assertOpen(breaker, "failed trial opens the circuit");
+    }
+
+    /**
+     * A cancelled trial lets the next request through.
+     *
+     * @throws Exception If the next request isn't let through.
+     */
+    public static void testTrialCancelled() throws Exception
+    {
+        CircuitBreaker breaker = CircuitBreakerTest._open(50);
+
+        Thread.sleep(100);
+
+        breaker.acquire();
+        breaker.cancel();
+        breaker.acquire();
+    }
+
+    /**
+     * Creates an open circuit breaker.
+     *
+     * @param cooldown Milliseconds the circuit stays open.
+     *
+     * @return Open circuit breaker.
+     */
+    private static CircuitBreaker _open(long cooldown)
+    {
+        CircuitBreaker breaker = new CircuitBreaker("test", 1, cooldown);
+        breaker.failure();
+
+        CircuitBreakerTest._assertOpen(breaker, "circuit opens");
+
+        return breaker;
+    }
+
+    /**
+     * Fails the test if the circuit lets a request through.
+     *
+     * @param breaker Circuit breaker.
+     * @param message What's being checked.
+     */
+    private static void _assertOpen(CircuitBreaker breaker, String message)
+    {
+        try {
+            breaker.acquire();
+        } catch(CircuitOpenException e) {
+            return;
+        }
+
+        throw new AssertionError(message);
+    }
+}
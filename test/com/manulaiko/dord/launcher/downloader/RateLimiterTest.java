@@ -0,0 +1,159 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tests for the rate limiter.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class RateLimiterTest
+{
+    /**
+     * Runs the tests.
+     *
+     * @param args Command line arguments.
+     *
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        RateLimiterTest.testBurst();
+        RateLimiterTest.testRate();
+        RateLimiterTest.testConcurrent();
+        RateLimiterTest.testInterrupt();
+        RateLimiterTest.testDeadline();
+
+        System.out.println("RateLimiterTest: all tests passed");
+    }
+
+    /**
+     * Up to a second of permits is taken without waiting.
+     *
+     * @throws IOException If the thread is interrupted.
+     */
+    public static void testBurst() throws IOException
+    {
+        RateLimiter limiter = new RateLimiter(1000);
+        long        start   = System.nanoTime();
+
+        limiter.acquire(1000);
+
+        RateLimiterTest._assert(RateLimiterTest._millisSince(start) < 100, "burst doesn't wait");
+    }
+
+    /**
+     * Once the bucket is empty, permits are refilled at the rate.
+     *
+     * @throws IOException If the thread is interrupted.
+     */
+    public static void testRate() throws IOException
+    {
+        RateLimiter limiter = new RateLimiter(1000);
+        limiter.acquire(1000);
+
+        long start = System.nanoTime();
+        limiter.acquire(500);
+
+        long elapsed = RateLimiterTest._millisSince(start);
+        RateLimiterTest._assert(elapsed >= 450 && elapsed < 1000, "500 permits take half a second, took "+ elapsed +"ms");
+    }
+
+    /**
+     * Permits taken by several threads add up.
+     *
+     * @throws Exception If the threads fail.
+     */
+    public static void testConcurrent() throws Exception
+    {
+        RateLimiter limiter = new RateLimiter(100);
+        Thread[]    threads = new Thread[4];
+        long        start   = System.nanoTime();
+
+        for(int i = 0; i < threads.length; i++) {
+            threads[i] = Thread.ofVirtual().start(() -> {
+                try {
+                    for(int j = 0; j < 50; j++) {
+                        limiter.acquire(1);
+                    }
+                } catch(IOException e) {
+                    throw new AssertionError(e);
+                }
+            });
+        }
+
+        for(Thread t : threads) {
+            t.join();
+        }
+
+        // 200 permits, 100 of them from the full bucket.
+        long elapsed = RateLimiterTest._millisSince(start);
+        RateLimiterTest._assert(elapsed >= 900 && elapsed < 1600, "200 permits at 100/s take a second, took "+ elapsed +"ms");
+    }
+
+    /**
+     * An interrupted wait throws.
+     */
+    public static void testInterrupt()
+    {
+        RateLimiter limiter = new RateLimiter(1);
+
+        Thread.currentThread().interrupt();
+        try {
+            limiter.acquire(10);
+        } catch(InterruptedIOException e) {
+            RateLimiterTest._assert(Thread.interrupted(), "interrupt flag is kept");
+
+            return;
+        }
+
+        throw new AssertionError("interrupted wait didn't throw");
+    }
+
+    /**
+     * A wait that would go past the deadline stops at it.
+     *
+     * @throws IOException If the thread is interrupted.
+     */
+    public static void testDeadline() throws IOException
+    {
+        RateLimiter limiter = new RateLimiter(10);
+        limiter.acquire(10);
+
+        long start = System.nanoTime();
+        RateLimiterTest._assert(!limiter.acquire(100, start + TimeUnit.MILLISECONDS.toNanos(200)), "deadline passes first");
+
+        long elapsed = RateLimiterTest._millisSince(start);
+        RateLimiterTest._assert(elapsed >= 150 && elapsed < 1000, "wait stops at the deadline, took "+ elapsed +"ms");
+
+        RateLimiter free = new RateLimiter(10);
+        RateLimiterTest._assert(free.acquire(5, System.nanoTime() + 1), "available permits are taken");
+    }
+
+    /**
+     * Returns the milliseconds since a time.
+     *
+     * @param start `System.nanoTime()` to measure from.
+     *
+     * @return Elapsed milliseconds.
+     */
+    private static long _millisSince(long start)
+    {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+    }
+
+    /**
+     * Fails the test if a condition doesn't hold.
+     *
+     * @param condition Condition.
+     * @param message   What's being checked.
+     */
+    private static void _assert(boolean condition, String message)
+    {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
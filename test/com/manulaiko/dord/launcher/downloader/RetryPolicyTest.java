@@ -0,0 +1,145 @@
+package com.manulaiko.dord.launcher.downloader;
+
+import java.io.EOFException;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URL;
+import java.net.UnknownHostException;
+import java.net.http.HttpConnectTimeoutException;
+
+import com.manulaiko.dord.launcher.downloader.transport.HttpStatusException;
+
+/**
+ * Tests for the retry policy.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class RetryPolicyTest
+{
+    /**
+     * Runs the tests.
+     *
+     * @param args Command line arguments.
+     *
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        RetryPolicyTest.testStatus();
+        RetryPolicyTest.testNetworkErrors();
+        RetryPolicyTest.testLocalErrors();
+        RetryPolicyTest.testAttempts();
+        RetryPolicyTest.testDelay();
+
+        System.out.println("RetryPolicyTest: all tests passed");
+    }
+
+    /**
+     * Only 408, 429 and 5xx answers are retried.
+     *
+     * @throws Exception If the URL is malformed.
+     */
+    public static void testStatus() throws Exception
+    {
+        URL url = URI.create("http://localhost/file").toURL();
+
+        for(int status : new int[] {408, 429, 500, 502, 503, 504}) {
+            RetryPolicyTest._assert(RetryPolicy.isRetryable(new HttpStatusException(url, status)), status +" is retried");
+        }
+
+        for(int status : new int[] {400, 401, 403, 404, 410, 416}) {
+            RetryPolicyTest._assert(!RetryPolicy.isRetryable(new HttpStatusException(url, status)), status +" isn't retried");
+        }
+    }
+
+    /**
+     * Network errors are retried, also when they're wrapped.
+     */
+    public static void testNetworkErrors()
+    {
+        IOException[] errors = {
+                new ConnectException("Connection refused"),
+                new SocketException("Connection reset"),
+                new SocketTimeoutException("Read timed out"),
+                new HttpConnectTimeoutException("Connect timed out"),
+                new UnknownHostException("localhost"),
+                new EOFException("Connection closed"),
+                new IOException("Wrapped", new SocketException("Connection reset"))
+        };
+
+        for(IOException e : errors) {
+            RetryPolicyTest._assert(RetryPolicy.isRetryable(e), e +" is retried");
+            RetryPolicyTest._assert(RetryPolicy.isNetworkError(e), e +" is a network error");
+        }
+    }
+
+    /**
+     * Local, protocol and cancellation errors fail fast.
+     */
+    public static void testLocalErrors()
+    {
+        IOException[] errors = {
+                new IOException("No space left on device"),
+                new FileNotFoundException("/tmp/dl/file (Permission denied)"),
+                new IOException("Malformed status line 'FTP'"),
+                new InterruptedIOException("Interrupted while throttled"),
+                new DeadlineExceededException("file"),
+                new CircuitOpenException("localhost")
+        };
+
+        for(IOException e : errors) {
+            RetryPolicyTest._assert(!RetryPolicy.isRetryable(e), e +" isn't retried");
+            RetryPolicyTest._assert(!RetryPolicy.isNetworkError(e), e +" isn't a network error");
+        }
+    }
+
+    /**
+     * Retries stop after the maximum amount of attempts.
+     */
+    public static void testAttempts()
+    {
+        RetryPolicy     policy = new RetryPolicy(3, 100, 1000);
+        SocketException e    = new SocketException("Connection reset");
+
+        RetryPolicyTest._assert(policy.shouldRetry(e, 1), "first attempt is retried");
+        RetryPolicyTest._assert(policy.shouldRetry(e, 2), "second attempt is retried");
+        RetryPolicyTest._assert(!policy.shouldRetry(e, 3), "last attempt isn't retried");
+        RetryPolicyTest._assert(!policy.shouldRetry(new IOException("Disk full"), 1), "local error isn't retried");
+    }
+
+    /**
+     * The delay grows exponentially up to the maximum.
+     */
+    public static void testDelay()
+    {
+        RetryPolicy policy = new RetryPolicy(10, 100, 1000);
+
+        for(int i = 0; i < 1000; i++) {
+            long first = policy.getDelay(1);
+            long third = policy.getDelay(3);
+            long last  = policy.getDelay(40);
+
+            RetryPolicyTest._assert(first >= 0 && first <= 100, "first delay is up to the base");
+            RetryPolicyTest._assert(third >= 0 && third <= 400, "third delay is up to 4 times the base");
+            RetryPolicyTest._assert(last >= 0 && last <= 1000, "delay is capped");
+        }
+    }
+
+    /**
+     * Fails the test if a condition doesn't hold.
+     *
+     * @param condition Condition.
+     * @param message   What's being checked.
+     */
+    private static void _assert(boolean condition, String message)
+    {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}
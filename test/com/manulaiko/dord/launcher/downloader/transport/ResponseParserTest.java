@@ -0,0 +1,326 @@
+package com.manulaiko.dord.launcher.downloader.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Tests for the response parser.
+ *
+ * @author Manulaiko <manulaiko@gmail.com>
+ */
+public class ResponseParserTest
+{
+    /**
+     * Runs the tests.
+     *
+     * @param args Command line arguments.
+     *
+     * @throws Exception If a test fails.
+     */
+    public static void main(String[] args) throws Exception
+    {
+        ResponseParserTest.testContentLength();
+        ResponseParserTest.testChunked();
+        ResponseParserTest.testSplitBytes();
+        ResponseParserTest.testPipelined();
+        ResponseParserTest.testUntilEof();
+        ResponseParserTest.testCutOff();
+        ResponseParserTest.testInterim();
+        ResponseParserTest.testNoBody();
+        ResponseParserTest.testKeepAlive();
+        ResponseParserTest.testMalformed();
+
+        System.out.println("ResponseParserTest: all tests passed");
+    }
+
+    /**
+     * A body delimited by `Content-Length` is read up to its length.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testContentLength() throws IOException
+    {
+        ResponseParser p  = new ResponseParser(false);
+        ByteBuffer     in = ResponseParserTest._buffer("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nETag: \"a\"\r\n\r\nhello");
+
+        ResponseParserTest._assert(p.parseHead(in), "headers parsed");
+        ResponseParserTest._assert(p.getStatus() == 200, "status is 200");
+        ResponseParserTest._assert("\"a\"".equals(p.getHeader("etag")), "headers are case insensitive");
+        ResponseParserTest._assert(p.getHeader("Location") == null, "missing header is null");
+        ResponseParserTest._assert("hello".equals(ResponseParserTest._body(p, in)), "body is read");
+    }
+
+    /**
+     * A chunked body is decoded, skipping extensions and trailers.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testChunked() throws IOException
+    {
+        ResponseParser p  = new ResponseParser(false);
+        ByteBuffer     in = ResponseParserTest._buffer(
+                "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n"+
+                "5;name=value\r\nhello\r\n7\r\n, world\r\n0\r\nX-Trailer: 1\r\n\r\n"
+        );
+
+        ResponseParserTest._assert(p.parseHead(in), "headers parsed");
+        ResponseParserTest._assert("hello, world".equals(ResponseParserTest._body(p, in)), "chunks are joined");
+        ResponseParserTest._assert(!in.hasRemaining(), "trailers are consumed");
+    }
+
+    /**
+     * The response can arrive one byte at a time.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testSplitBytes() throws IOException
+    {
+        byte[]         bytes = "HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n3\r\nabc\r\n0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        ResponseParser p     = new ResponseParser(false);
+        ByteBuffer     out   = ByteBuffer.allocate(16);
+        ByteBuffer     in    = ByteBuffer.allocate(1);
+        boolean        head  = false;
+        int            read  = 0;
+
+        for(byte b : bytes) {
+            in.clear();
+            in.put(b).flip();
+
+            if(!head) {
+                head = p.parseHead(in);
+            }
+
+            if(head) {
+                read = ResponseParserTest._readBody(p, in, out);
+            }
+        }
+
+        ResponseParserTest._assert(head, "headers parsed");
+        ResponseParserTest._assert(read == -1, "body complete");
+        ResponseParserTest._assert("abc".equals(new String(out.array(), 0, out.position(), StandardCharsets.ISO_8859_1)), "body is read");
+    }
+
+    /**
+     * Bytes of the next response are left in the buffer.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testPipelined() throws IOException
+    {
+        ByteBuffer in = ResponseParserTest._buffer(
+                "HTTP/1.1 200 OK\r\nContent-Length: 3\r\n\r\nabc"+
+                "HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n"
+        );
+
+        ResponseParser first = new ResponseParser(false);
+        first.parseHead(in);
+        ResponseParserTest._assert("abc".equals(ResponseParserTest._body(first, in)), "first body is read");
+
+        ResponseParser second = new ResponseParser(false);
+        ResponseParserTest._assert(second.parseHead(in), "second headers parsed");
+        ResponseParserTest._assert(second.getStatus() == 404, "second status is 404");
+        ResponseParserTest._assert(ResponseParserTest._readBody(second, in, ByteBuffer.allocate(1)) == -1, "second body is empty");
+    }
+
+    /**
+     * A body without length ends with the connection.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testUntilEof() throws IOException
+    {
+        ResponseParser p  = new ResponseParser(false);
+        ByteBuffer     in = ResponseParserTest._buffer("HTTP/1.0 200 OK\r\n\r\nabc");
+
+        p.parseHead(in);
+
+        ByteBuffer out = ByteBuffer.allocate(16);
+        ResponseParserTest._assert(ResponseParserTest._readBody(p, in, out) == 3, "available bytes are read");
+        ResponseParserTest._assert(!p.isKeepAlive(), "connection can't be reused");
+        ResponseParserTest._assert(p.eof(), "end of connection completes the body");
+        ResponseParserTest._assert(ResponseParserTest._readBody(p, in, out) == -1, "body complete");
+    }
+
+    /**
+     * A connection closed in the middle of a body cuts the response off.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testCutOff() throws IOException
+    {
+        ResponseParser p  = new ResponseParser(false);
+        ByteBuffer     in = ResponseParserTest._buffer("HTTP/1.1 200 OK\r\nContent-Length: 10\r\n\r\nabc");
+
+        p.parseHead(in);
+        ResponseParserTest._readBody(p, in, ByteBuffer.allocate(16));
+
+        ResponseParserTest._assert(p.hasStarted(), "response started");
+        ResponseParserTest._assert(!p.eof(), "response is cut off");
+        ResponseParserTest._assert(!new ResponseParser(false).hasStarted(), "empty response didn't start");
+    }
+
+    /**
+     * Interim responses are skipped.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testInterim() throws IOException
+    {
+        ResponseParser p  = new ResponseParser(false);
+        ByteBuffer     in = ResponseParserTest._buffer("HTTP/1.1 100 Continue\r\nX-A: 1\r\n\r\nHTTP/1.1 200 OK\r\nContent-Length: 1\r\n\r\nx");
+
+        ResponseParserTest._assert(p.parseHead(in), "headers parsed");
+        ResponseParserTest._assert(p.getStatus() == 200, "final status is kept");
+        ResponseParserTest._assert(p.getHeader("X-A") == null, "interim headers are dropped");
+        ResponseParserTest._assert("x".equals(ResponseParserTest._body(p, in)), "body is read");
+    }
+
+    /**
+     * HEAD, 204 and 304 responses have no body, whatever their headers say.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testNoBody() throws IOException
+    {
+        ResponseParser head = new ResponseParser(true);
+        head.parseHead(ResponseParserTest._buffer("HTTP/1.1 200 OK\r\nContent-Length: 100\r\n\r\n"));
+        ResponseParserTest._assert(ResponseParserTest._readBody(head, ByteBuffer.allocate(0), ByteBuffer.allocate(1)) == -1, "HEAD has no body");
+
+        ResponseParser notModified = new ResponseParser(false);
+        notModified.parseHead(ResponseParserTest._buffer("HTTP/1.1 304 Not Modified\r\nContent-Length: 100\r\n\r\n"));
+        ResponseParserTest._assert(ResponseParserTest._readBody(notModified, ByteBuffer.allocate(0), ByteBuffer.allocate(1)) == -1, "304 has no body");
+    }
+
+    /**
+     * HTTP/1.1 keeps the connection open by default and HTTP/1.0 doesn't.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    public static void testKeepAlive() throws IOException
+    {
+        ResponseParserTest._assert(ResponseParserTest._head("HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n").isKeepAlive(), "HTTP/1.1 is kept alive");
+        ResponseParserTest._assert(!ResponseParserTest._head("HTTP/1.1 200 OK\r\nConnection: close\r\nContent-Length: 0\r\n\r\n").isKeepAlive(), "Connection: close isn't kept alive");
+        ResponseParserTest._assert(!ResponseParserTest._head("HTTP/1.0 200 OK\r\nContent-Length: 0\r\n\r\n").isKeepAlive(), "HTTP/1.0 isn't kept alive");
+        ResponseParserTest._assert(ResponseParserTest._head("HTTP/1.0 200 OK\r\nConnection: keep-alive\r\nContent-Length: 0\r\n\r\n").isKeepAlive(), "HTTP/1.0 with keep-alive is kept alive");
+    }
+
+    /**
+     * Malformed responses are rejected.
+     */
+    public static void testMalformed()
+    {
+        String[] responses = {
+                "FTP 200 OK\r\n\r\n",
+                "HTTP/1.1 abc OK\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nno colon\r\n\r\n",
+                "HTTP/1.1 200 OK\r\nContent-Length: x\r\n\r\n"
+        };
+
+        for(String response : responses) {
+            try {
+                ResponseParserTest._head(response);
+            } catch(IOException e) {
+                continue;
+            }
+
+            throw new AssertionError("Malformed response accepted: "+ response.trim());
+        }
+
+        try {
+            ResponseParser p  = ResponseParserTest._head("HTTP/1.1 200 OK\r\nTransfer-Encoding: chunked\r\n\r\n");
+            ResponseParserTest._readBody(p, ResponseParserTest._buffer("zz\r\n"), ByteBuffer.allocate(1));
+        } catch(IOException e) {
+            return;
+        }
+
+        throw new AssertionError("Malformed chunk size accepted");
+    }
+
+    /**
+     * Parses the headers of a response.
+     *
+     * @param response Response.
+     *
+     * @return Parser with the headers parsed.
+     *
+     * @throws IOException If the response can't be parsed.
+     */
+    private static ResponseParser _head(String response) throws IOException
+    {
+        ResponseParser p = new ResponseParser(false);
+        p.parseHead(ResponseParserTest._buffer(response));
+
+        return p;
+    }
+
+    /**
+     * Reads the whole body of a response.
+     *
+     * @param p  Parser with the headers parsed.
+     * @param in Received bytes.
+     *
+     * @return Body.
+     *
+     * @throws IOException If the body can't be parsed.
+     */
+    private static String _body(ResponseParser p, ByteBuffer in) throws IOException
+    {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        ByteBuffer            out  = ByteBuffer.allocate(4);
+
+        int n;
+        while((n = ResponseParserTest._readBody(p, in, out)) >= 0) {
+            if(n == 0 && !in.hasRemaining()) {
+                throw new AssertionError("Body incomplete");
+            }
+
+            body.write(out.array(), 0, out.position());
+            out.clear();
+        }
+
+        return body.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Reads body bytes.
+     *
+     * @param p   Parser with the headers parsed.
+     * @param in  Received bytes.
+     * @param out Buffer to copy the body bytes to.
+     *
+     * @return Copied bytes, `0` if more bytes are needed or `-1` if the body is complete.
+     *
+     * @throws IOException If the body can't be parsed.
+     */
+    private static int _readBody(ResponseParser p, ByteBuffer in, ByteBuffer out) throws IOException
+    {
+        return p.readBody(in, out);
+    }
+
+    /**
+     * Wraps a response in a buffer.
+     *
+     * @param response Response.
+     *
+     * @return Buffer in read mode.
+     */
+    private static ByteBuffer _buffer(String response)
+    {
+        return ByteBuffer.wrap(response.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    /**
+     * Fails the test if a condition doesn't hold.
+     *
+     * @param condition Condition.
+     * @param message   What's being checked.
+     */
+    private static void _assert(boolean condition, String message)
+    {
+        if(!condition) {
+            throw new AssertionError(message);
+        }
+    }
+}